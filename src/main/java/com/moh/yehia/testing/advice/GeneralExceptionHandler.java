@@ -2,15 +2,21 @@
 // GlobalExceptionHandler是全局异常统一捕获的方法, 将exception以统一的格式返回给前端
 package com.moh.yehia.testing.advice;
 
+import com.moh.yehia.testing.exception.InsufficientStockException;
 import com.moh.yehia.testing.exception.InvalidRequestException;
 import com.moh.yehia.testing.model.ApiError;
 import com.moh.yehia.testing.model.ValidationError;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -24,11 +30,19 @@ import java.util.List;
 // controller层的切片, advice通知类
 // 这个注解与@ExceptionHandler构成一组, spring会扫描出这两个注解,并将@ExceptionHandler标注的方法用于当controller接收到请求但在正确返回前抛出异常的时候执行这个方法向前端返回返回值
 @ControllerAdvice
+// 只处理spring mvc的异常, reactive profile中由ReactiveExceptionHandler返回相同格式的错误
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 // 用于自动生成lombok标准格式的log,这里是注入了Log4j2的实例,以便后面使用log.info()、log.error()、log.debug()方法来手动打印log,
 @Log4j2
+@RequiredArgsConstructor
 //继承了Springmvc框架自带的ResponseEntityExceptionHandler异常处理基类, 用于进行全局异常处理
 // ResponseEntityExceptionHandler自带很多标准的异常处理, 继承即可自动对相关异常进行处理,不写@ExceptionHandler都可以. 只对新追加的全局异常处理方法写@ExceptionHandler即可
 public class GeneralExceptionHandler extends ResponseEntityExceptionHandler {
+    // 错误计数指标名, 按返回给前端的错误码(code)和http状态码(status)分开统计, 在/actuator/prometheus中为api_errors_total
+    static final String ERROR_COUNTER = "api.errors";
+
+    private final MeterRegistry meterRegistry;
+
 	// @ExceptionHandler注解用于spring识别为全局异常处理的方法, 传入要进行处理的类,表示针对这个类使用注解下方的方法进行处理
     @ExceptionHandler(InvalidRequestException.class)
     // 手写了一个处理无效请求的新统一异常返回,参数是上面传入的类的对象, 和web链接
@@ -38,6 +52,7 @@ public class GeneralExceptionHandler extends ResponseEntityExceptionHandler {
     	// 出error先打印到log中. 异常的log打印推荐是在全局异常处理中统一处理(此处), 但继承extends ResponseEntityExceptionHandler的方法不会打印log, 只有手写/override加上了log打印的异常处理才会打印log
     	// 想要打印什么异常的log就需要写对应异常的全局处理方法, 如果想打印所有异常的log,就写一个exception.class的全局处理方法进行log输出
         log.error(e.getMessage(), e);
+        countError("INVALID_REQUEST", HttpStatus.BAD_REQUEST);
         // return的时候不需再写一遍泛型了, 编辑器会自动推断出来
         return new ResponseEntity<>(
         		//响应体定义为一个ApiError对象, 手写状态码, 将异常信息作为message, 最后用webRequest的getDescription方法获得请求的地址(false代表不带客户端IP),便于定位异常的接口是哪个
@@ -48,6 +63,21 @@ public class GeneralExceptionHandler extends ResponseEntityExceptionHandler {
         );
     }
 
+    // 乐观锁冲突: 客户端持有的版本已经过期, 需要重新GET最新数据后再提交
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ApiError> handleConflict(OptimisticLockingFailureException e, WebRequest webRequest) {
+        log.warn(e.getMessage());
+        countError("CONFLICT", HttpStatus.CONFLICT);
+        return new ResponseEntity<>(new ApiError("CONFLICT", e.getMessage(), webRequest.getDescription(false)), HttpStatus.CONFLICT);
+    }
+
+    // 库存不足: 商品存在但剩余库存小于请求的数量
+    @ExceptionHandler(InsufficientStockException.class)
+    public ResponseEntity<ApiError> handleInsufficientStock(InsufficientStockException e, WebRequest webRequest) {
+        countError("INSUFFICIENT_STOCK", HttpStatus.CONFLICT);
+        return new ResponseEntity<>(new ApiError("INSUFFICIENT_STOCK", e.getMessage(), webRequest.getDescription(false)), HttpStatus.CONFLICT);
+    }
+
     // handleMethodArgumentNotValid()是spring在ResponseEntityExceptionHandler中预置的一个全局异常处理方法, 负责处理@Valid相关注解做数据校验时失败的异常
     // 重写这个方法, 将返回值改造成与上个异常处理相同功能的类型,而不是返回spring默认的http相应
     // 这是个数据校验异常时必须调用的钩子,所以我们只能改造这个方法来匹配之前的返回内容
@@ -63,7 +93,19 @@ public class GeneralExceptionHandler extends ResponseEntityExceptionHandler {
         List<ObjectError> globalErrors = ex.getBindingResult().getGlobalErrors();
         fieldErrors.forEach(fieldError -> validationError.addError(fieldError.getField(), fieldError.getDefaultMessage()));
         globalErrors.forEach(globalError -> validationError.addError(globalError.getObjectName(), globalError.getDefaultMessage()));
+        countError("VALIDATION_ERROR", HttpStatus.BAD_REQUEST);
         // 最终return的类与上个方法相同
         return new ResponseEntity<>(validationError, HttpStatus.BAD_REQUEST);
     }
+
+    // ResponseEntityExceptionHandler自带的其它异常处理(如404、405、415、参数类型错误)最后都会调用这个方法, 在这里统一计数
+    @Override
+    protected ResponseEntity<Object> handleExceptionInternal(@NonNull Exception ex, @Nullable Object body, @NonNull HttpHeaders headers, @NonNull HttpStatusCode statusCode, @NonNull WebRequest request) {
+        countError(ex.getClass().getSimpleName(), statusCode);
+        return super.handleExceptionInternal(ex, body, headers, statusCode, request);
+    }
+
+    private void countError(String code, HttpStatusCode statusCode) {
+        meterRegistry.counter(ERROR_COUNTER, "code", code, "status", String.valueOf(statusCode.value())).increment();
+    }
 }
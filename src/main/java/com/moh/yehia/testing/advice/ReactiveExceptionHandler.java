@@ -0,0 +1,83 @@
+package com.moh.yehia.testing.advice;
+
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.ApiError;
+import com.moh.yehia.testing.model.ValidationError;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+// GeneralExceptionHandler的WebFlux版本, 只在reactive profile中生效
+// 返回给前端的错误格式(ApiError, ValidationError)和错误计数指标与GeneralExceptionHandler完全一致, 客户端切换两种部署方式时不需要改动
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Log4j2
+@RequiredArgsConstructor
+public class ReactiveExceptionHandler extends ResponseEntityExceptionHandler {
+    // WebFlux的切片测试(@WebFluxTest)中没有MeterRegistry, 所以用ObjectProvider按需获取
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<ApiError> handleInvalidRequest(InvalidRequestException e, ServerWebExchange exchange) {
+        log.error(e.getMessage(), e);
+        countError("INVALID_REQUEST", HttpStatus.BAD_REQUEST);
+        return new ResponseEntity<>(new ApiError("INVALID_REQUEST", e.getMessage(), describe(exchange)), HttpStatus.BAD_REQUEST);
+    }
+
+    // 乐观锁冲突: 客户端持有的版本已经过期, 需要重新GET最新数据后再提交
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ApiError> handleConflict(OptimisticLockingFailureException e, ServerWebExchange exchange) {
+        log.warn(e.getMessage());
+        countError("CONFLICT", HttpStatus.CONFLICT);
+        return new ResponseEntity<>(new ApiError("CONFLICT", e.getMessage(), describe(exchange)), HttpStatus.CONFLICT);
+    }
+
+    // 库存不足: 商品存在但剩余库存小于请求的数量
+    @ExceptionHandler(InsufficientStockException.class)
+    public ResponseEntity<ApiError> handleInsufficientStock(InsufficientStockException e, ServerWebExchange exchange) {
+        countError("INSUFFICIENT_STOCK", HttpStatus.CONFLICT);
+        return new ResponseEntity<>(new ApiError("INSUFFICIENT_STOCK", e.getMessage(), describe(exchange)), HttpStatus.CONFLICT);
+    }
+
+    // @Valid @RequestBody校验失败时WebFlux抛出的是WebExchangeBindException(对应spring mvc的MethodArgumentNotValidException)
+    @Override
+    protected Mono<ResponseEntity<Object>> handleWebExchangeBindException(@NonNull WebExchangeBindException ex, @NonNull HttpHeaders headers, @NonNull HttpStatusCode status, @NonNull ServerWebExchange exchange) {
+        ValidationError validationError = new ValidationError(describe(exchange), "Invalid Request Data, Your request is either missing required data or contains invalid values");
+        ex.getFieldErrors().forEach(fieldError -> validationError.addError(fieldError.getField(), fieldError.getDefaultMessage()));
+        ex.getGlobalErrors().forEach(globalError -> validationError.addError(globalError.getObjectName(), globalError.getDefaultMessage()));
+        countError("VALIDATION_ERROR", HttpStatus.BAD_REQUEST);
+        return Mono.just(new ResponseEntity<>(validationError, HttpStatus.BAD_REQUEST));
+    }
+
+    @Override
+    protected Mono<ResponseEntity<Object>> handleExceptionInternal(@NonNull Exception ex, @Nullable Object body, @Nullable HttpHeaders headers, @NonNull HttpStatusCode status, @NonNull ServerWebExchange exchange) {
+        countError(ex.getClass().getSimpleName(), status);
+        return super.handleExceptionInternal(ex, body, headers, status, exchange);
+    }
+
+    // 与spring mvc的WebRequest.getDescription(false)格式相同: uri=请求路径
+    private static String describe(ServerWebExchange exchange) {
+        return "uri=" + exchange.getRequest().getPath().value();
+    }
+
+    private void countError(String code, HttpStatusCode statusCode) {
+        meterRegistry.ifAvailable(registry -> registry.counter(GeneralExceptionHandler.ERROR_COUNTER, "code", code,
+                "status", String.valueOf(statusCode.value())).increment());
+    }
+}
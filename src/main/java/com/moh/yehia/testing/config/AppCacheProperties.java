@@ -0,0 +1,18 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// 进程内缓存的配置, 对应application.yml中app.cache下的配置项
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class AppCacheProperties {
+    // 每个缓存最多保存的条目数, 超过后按Caffeine的淘汰策略清除
+    private long maximumSize = 10_000;
+    // 查到数据的缓存时间
+    private Duration ttl = Duration.ofMinutes(10);
+    // 查不到数据(null)的缓存时间, 设短一些, 防止其它实例新建的数据在本实例长时间查不到
+    private Duration negativeTtl = Duration.ofSeconds(30);
+}
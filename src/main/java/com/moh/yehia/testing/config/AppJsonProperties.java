@@ -0,0 +1,12 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// JSON(以及Smile/CBOR)序列化的配置, 对应application.yml中app.json下的配置项
+@Data
+@ConfigurationProperties(prefix = "app.json")
+public class AppJsonProperties {
+    // 开启后注册Blackbird模块: 用LambdaMetafactory生成的访问器代替反射读写getter/setter, 列表接口序列化更快
+    private boolean blackbird = false;
+}
@@ -0,0 +1,16 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// controller耗时日志(AppLogger)的配置, 对应application.yml中app.logging下的配置项
+@Data
+@ConfigurationProperties(prefix = "app.logging")
+public class AppLoggingProperties {
+    // 耗时达到这个值的调用按WARN级别完整打印(方法名、耗时、参数)
+    private Duration slowThreshold = Duration.ofMillis(500);
+    // 正常耗时的调用中按这个比例抽样打印参数(0到1之间, 0表示不打印, 1表示每次都打印)
+    private double argsSampleRate = 0.01;
+}
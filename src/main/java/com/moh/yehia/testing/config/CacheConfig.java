@@ -0,0 +1,56 @@
+package com.moh.yehia.testing.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+// 开启spring的缓存注解(@Cacheable/@CachePut/@CacheEvict), 缓存实现使用进程内的Caffeine
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String PRODUCTS = "products";
+    public static final String CATEGORIES = "categories";
+
+    @Bean
+    public CacheManager cacheManager(AppCacheProperties appCacheProperties) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(appCacheProperties.getMaximumSize())
+                .expireAfter(expiry(appCacheProperties))
+                // 开启命中/未命中/淘汰次数的统计
+                .recordStats());
+        // 允许缓存null(spring会存成NullValue), 这样查不到的id也会被缓存, 大量请求同一个不存在的id时不会每次都查库
+        cacheManager.setAllowNullValues(true);
+        cacheManager.setCacheNames(List.of(PRODUCTS, CATEGORIES));
+        return cacheManager;
+    }
+
+    // 按值区分过期时间: 正常数据用ttl, 缓存的null用更短的negativeTtl
+    private static Expiry<Object, Object> expiry(AppCacheProperties appCacheProperties) {
+        long ttl = appCacheProperties.getTtl().toNanos();
+        long negativeTtl = appCacheProperties.getNegativeTtl().toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(Object key, Object value, long currentTime) {
+                return value instanceof NullValue ? negativeTtl : ttl;
+            }
+
+            @Override
+            public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
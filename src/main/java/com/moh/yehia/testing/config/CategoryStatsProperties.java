@@ -0,0 +1,12 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 分类统计(GET /categories/stats, /categories/{id}/stats)的配置, 对应application.yml中app.categories.stats下的配置项
+@Data
+@ConfigurationProperties(prefix = "app.categories.stats")
+public class CategoryStatsProperties {
+    // 关闭时每次请求都在Mongo中跑一次聚合; 开启后商品写入时增量更新categoryStats中的汇总文档, 读统计只读汇总文档
+    private boolean incremental = false;
+}
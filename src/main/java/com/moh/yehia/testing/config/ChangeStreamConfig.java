@@ -0,0 +1,42 @@
+package com.moh.yehia.testing.config;
+
+import com.moh.yehia.testing.event.ChangeStreamEventBridge;
+import com.moh.yehia.testing.event.ChangeStreamSubscriptions;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+
+import java.util.List;
+
+// 监听product和category集合的change stream, 让多个实例的本地缓存/快照在其它实例写入后及时失效
+// change stream要求MongoDB是副本集(单节点副本集也可以), 所以默认关闭, 通过app.change-streams.enabled=true开启
+@Configuration
+@ConditionalOnProperty(prefix = "app.change-streams", name = "enabled", havingValue = "true")
+public class ChangeStreamConfig {
+    private static final List<Class<?>> WATCHED_TYPES = List.of(Product.class, Category.class);
+
+    @Bean
+    public ChangeStreamEventBridge changeStreamEventBridge(ApplicationEventPublisher applicationEventPublisher) {
+        return new ChangeStreamEventBridge(applicationEventPublisher);
+    }
+
+    // 容器实现了SmartLifecycle, spring启动完成后自动开始监听, 关闭时自动停止
+    @Bean
+    public MessageListenerContainer changeStreamListenerContainer(MongoTemplate mongoTemplate) {
+        return new DefaultMessageListenerContainer(mongoTemplate, new SimpleAsyncTaskExecutor("change-stream-"));
+    }
+
+    // 每个集合一个订阅, 出错后定时从resume token处重新订阅, 同时作为健康检查
+    @Bean
+    public ChangeStreamSubscriptions changeStreamSubscriptions(MessageListenerContainer changeStreamListenerContainer, MongoTemplate mongoTemplate,
+                                                               ChangeStreamEventBridge changeStreamEventBridge) {
+        return new ChangeStreamSubscriptions(changeStreamListenerContainer, mongoTemplate, changeStreamEventBridge, WATCHED_TYPES);
+    }
+}
@@ -0,0 +1,21 @@
+package com.moh.yehia.testing.config;
+
+import com.moh.yehia.testing.util.IdGenerator;
+import com.moh.yehia.testing.util.MonotonicIdGenerator;
+import com.moh.yehia.testing.util.UuidIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// 按app.ids.generator选择新数据的id生成策略; 已有数据的id不受影响, 新旧格式的id都按字符串保存和查询
+@Configuration
+public class IdGeneratorConfig {
+    @Bean
+    public IdGenerator idGenerator(@Value("${app.ids.generator:monotonic}") String generator) {
+        return switch (generator) {
+            case "monotonic" -> new MonotonicIdGenerator();
+            case "uuid" -> new UuidIdGenerator();
+            default -> throw new IllegalStateException("Unknown app.ids.generator: " + generator + ", expected monotonic or uuid");
+        };
+    }
+}
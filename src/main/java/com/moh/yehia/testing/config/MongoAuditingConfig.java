@@ -0,0 +1,19 @@
+package com.moh.yehia.testing.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+
+// 开启auditing后, 保存实体时自动写入@LastModifiedDate字段
+// MongoTemplate和ReactiveMongoTemplate使用各自的回调, reactive profile中需要另外开启
+@Configuration
+@EnableMongoAuditing
+public class MongoAuditingConfig {
+
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    @EnableReactiveMongoAuditing
+    static class ReactiveMongoAuditingConfig {
+    }
+}
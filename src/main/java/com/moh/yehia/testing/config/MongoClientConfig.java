@@ -0,0 +1,24 @@
+package com.moh.yehia.testing.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+// 在spring boot自动配置的MongoClient上按app.mongodb.pool调整连接池, 连接地址等其它配置仍然来自spring.data.mongodb
+// 虚拟线程模式下再叠加app.mongodb.pool.virtual-threads中的配置, 平台线程模式下连接池的行为不受影响
+@Configuration
+public class MongoClientConfig {
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoConnectionPoolCustomizer(MongoPoolProperties mongoPoolProperties,
+                                                                              @Value("${app.threads.virtual.enabled:false}") boolean virtualThreadsEnabled) {
+        MongoPoolProperties pool = mongoPoolProperties.effective(virtualThreadsEnabled);
+        return builder -> builder.applyToConnectionPoolSettings(settings -> settings
+                .maxSize(pool.getMaxSize())
+                .minSize(pool.getMinSize())
+                .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnecting(pool.getMaxConnecting()));
+    }
+}
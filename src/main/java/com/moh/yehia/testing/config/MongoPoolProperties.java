@@ -0,0 +1,44 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// Mongo驱动连接池的配置, 对应application.yml中app.mongodb.pool下的配置项, 默认值与驱动的默认值相同
+@Data
+@ConfigurationProperties(prefix = "app.mongodb.pool")
+public class MongoPoolProperties {
+    // 每个Mongo节点最多的连接数, 也就是最多同时执行的数据库操作数
+    private int maxSize = 100;
+    // 保持的最少连接数, 避免流量突增时临时建连
+    private int minSize = 0;
+    // 连接池满时请求等待连接的最长时间, 超时抛出异常而不是无限排队
+    private Duration maxWaitTime = Duration.ofMinutes(2);
+    // 同时建立新连接的最大数量
+    private int maxConnecting = 2;
+    // 只在虚拟线程模式(app.threads.virtual.enabled=true)下生效, 设置了的项覆盖上面的同名配置
+    private Overrides virtualThreads = new Overrides();
+
+    // 开启虚拟线程时返回覆盖后的配置, 否则返回自身
+    public MongoPoolProperties effective(boolean virtualThreadsEnabled) {
+        if (!virtualThreadsEnabled) {
+            return this;
+        }
+        MongoPoolProperties effective = new MongoPoolProperties();
+        effective.setMaxSize(virtualThreads.getMaxSize() != null ? virtualThreads.getMaxSize() : maxSize);
+        effective.setMinSize(virtualThreads.getMinSize() != null ? virtualThreads.getMinSize() : minSize);
+        effective.setMaxWaitTime(virtualThreads.getMaxWaitTime() != null ? virtualThreads.getMaxWaitTime() : maxWaitTime);
+        effective.setMaxConnecting(virtualThreads.getMaxConnecting() != null ? virtualThreads.getMaxConnecting() : maxConnecting);
+        return effective;
+    }
+
+    // 没有设置的项为null, 沿用外层的配置
+    @Data
+    public static class Overrides {
+        private Integer maxSize;
+        private Integer minSize;
+        private Duration maxWaitTime;
+        private Integer maxConnecting;
+    }
+}
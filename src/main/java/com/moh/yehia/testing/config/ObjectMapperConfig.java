@@ -2,9 +2,19 @@ package com.moh.yehia.testing.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 
 //这是一个配置ObjectMapper类为单例对象的方法, 注册一个单例对象交给spring托管,将ObjectMapper的时间戳配置为JavaTimeModule的ISO字符串格式
 //将这里配置过的ObjectMapper交给spring托管后, spring就不会使用默认配置的ObjectMapper来作序列化/反序列化了,而是使用本配置文件配置过的ObjectMapper进行序列化/反
@@ -17,13 +27,49 @@ public class ObjectMapperConfig {
     @Bean
     // 这是一个Bean配置方法, 返回值为生成的Bean类, 方法名也为生成的Bean类, 方法的作用是通过自定义的方式生成一个对象,然后通过@Bean将此方法生成的对象交给spring作为对象管理
     // 要想spring将此对象作为单例对象管理, 就必须给类加上@configuration
-    public ObjectMapper objectMapper() {
+    public ObjectMapper objectMapper(AppJsonProperties appJsonProperties) {
     	// 创建一个ObjectMapper对象
-        ObjectMapper objectMapper = new ObjectMapper();
+        return configure(new ObjectMapper(), appJsonProperties.isBlackbird());
+    }
+
+    // 除JSON外, 请求头Accept/Content-Type为application/x-jackson-smile或application/cbor时使用二进制格式读写请求体和响应体
+    // 这两个ObjectMapper不注册成bean(否则注入ObjectMapper的地方会有多个候选), 只在消息转换器内部使用, 模块和特性与JSON的ObjectMapper完全相同
+    // spring boot会把容器中的HttpMessageConverter加到默认的转换器列表前面
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(AppJsonProperties appJsonProperties) {
+        return new MappingJackson2SmileHttpMessageConverter(configure(new SmileMapper(), appJsonProperties.isBlackbird()));
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(AppJsonProperties appJsonProperties) {
+        return new MappingJackson2CborHttpMessageConverter(configure(new CBORMapper(), appJsonProperties.isBlackbird()));
+    }
+
+    // reactive profile(WebFlux)中用的是编解码器(codec)而不是消息转换器: 替换默认的Smile编解码器, CBOR默认没有, 需要另外注册
+    @Bean
+    public CodecCustomizer binaryFormatCodecCustomizer(AppJsonProperties appJsonProperties) {
+        boolean blackbird = appJsonProperties.isBlackbird();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(configure(new SmileMapper(), blackbird)));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(configure(new SmileMapper(), blackbird)));
+            configurer.customCodecs().register(new Jackson2CborEncoder(configure(new CBORMapper(), blackbird)));
+            configurer.customCodecs().register(new Jackson2CborDecoder(configure(new CBORMapper(), blackbird)));
+        };
+    }
+
+    public static <T extends ObjectMapper> T configure(T objectMapper) {
+        return configure(objectMapper, false);
+    }
+
+    // 所有格式共用的配置, blackbird为true时再注册Blackbird模块(只改变读写属性的方式, 输出的内容不变)
+    public static <T extends ObjectMapper> T configure(T objectMapper, boolean blackbird) {
         // objectMapper原生不认识java8加入的新时间类, 所以提供了registerModule方法来注册这些类(让objectMapper按类定义的方式序列化与反序列化),使得objectMapper可以认识与使用这些新的日期格式
         objectMapper.registerModule(new JavaTimeModule());
         // 禁用了object默认的data格式(纯数字),改为UTF-8的时间字符串格式
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if (blackbird) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
         return objectMapper;
     }
 }
@@ -0,0 +1,19 @@
+package com.moh.yehia.testing.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+// 批量导入商品的配置, 对应application.yml中app.products.batch下的配置项
+// 配置错误时启动失败, 而不是等到第一次批量导入时才出错
+@Data
+@Validated
+@ConfigurationProperties(prefix = "app.products.batch")
+public class ProductBatchProperties {
+    // 每攒够多少条合法数据就向Mongo发一次无序批量插入; 上限远小于Mongo单次批量写入的100000条, 避免一批在内存中攒太多数据
+    @Min(1)
+    @Max(10_000)
+    private int chunkSize = 500;
+}
@@ -0,0 +1,14 @@
+package com.moh.yehia.testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 库存预占(POST /products/{id}/reserve)的配置, 对应application.yml中app.products.reservation下的配置项
+@Data
+@ConfigurationProperties(prefix = "app.products.reservation")
+public class ProductReservationProperties {
+    // 开启后同一商品的并发预占请求在进程内合并, 一批只向Mongo发一次$inc; 关闭时每个请求单独更新
+    private boolean coalescingEnabled = false;
+    // 一批最多合并多少个请求
+    private int maxBatchSize = 64;
+}
@@ -0,0 +1,62 @@
+package com.moh.yehia.testing.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// 虚拟线程模式(需要Java 21): 每个请求在一个新的虚拟线程中处理, 请求阻塞在Mongo同步驱动上时只会挂起虚拟线程, 不再占用tomcat线程池中的平台线程
+// 此时能同时访问数据库的请求数由Mongo连接池(app.mongodb.pool, 以及只在这个模式下生效的app.mongodb.pool.virtual-threads)决定, 而不是tomcat的线程数
+// 默认关闭, 通过app.threads.virtual.enabled=true开启
+@Configuration
+@ConditionalOnProperty(prefix = "app.threads.virtual", name = "enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfig implements DisposableBean {
+    // 关闭时等待正在处理的请求和异步任务结束的最长时间
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    // tomcat使用外部传入的执行器时不会在停止时关闭它, 两个执行器都由这里在容器关闭时关闭
+    private final ExecutorService requestExecutor = Executors.newThreadPerTaskExecutor(virtualThreads("http-vt-"));
+    private final ExecutorService taskExecutor = Executors.newThreadPerTaskExecutor(virtualThreads("task-vt-"));
+
+    // tomcat处理请求的线程池换成虚拟线程执行器(server.tomcat.threads.max不再生效)
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    // 替换spring boot默认的applicationTaskExecutor, 异步请求(如StreamingResponseBody的商品导出)也在虚拟线程中执行
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(taskExecutor);
+    }
+
+    // web server在这之前已经停止接收请求, 这里不再接受新任务, 等已有的任务结束, 超时后中断剩下的
+    @Override
+    public void destroy() throws InterruptedException {
+        requestExecutor.shutdown();
+        taskExecutor.shutdown();
+        boolean terminated = requestExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        terminated &= taskExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!terminated) {
+            log.warn("VirtualThreadConfig :: virtual thread executors did not terminate in {}s, interrupting remaining tasks", SHUTDOWN_TIMEOUT_SECONDS);
+            requestExecutor.shutdownNow();
+            taskExecutor.shutdownNow();
+        }
+    }
+
+    // 虚拟线程默认没有名字, 日志中的线程名会是空的, 这里加上前缀和序号
+    private static ThreadFactory virtualThreads(String prefix) {
+        return Thread.ofVirtual().name(prefix, 0).factory();
+    }
+}
@@ -0,0 +1,38 @@
+package com.moh.yehia.testing.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.moh.yehia.testing.model.CacheStatistics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Objects;
+
+// 查看进程内缓存的统计数据(当前条目数/命中/未命中/淘汰次数)
+@RestController
+@RequestMapping("/api/v1/caches")
+@RequiredArgsConstructor
+public class CacheController {
+    private final CacheManager cacheManager;
+
+    @GetMapping
+    public List<CacheStatistics> findAll() {
+        return cacheManager.getCacheNames().stream()
+                .map(cacheManager::getCache)
+                .filter(Objects::nonNull)
+                .map(CacheController::toStatistics)
+                .toList();
+    }
+
+    private static CacheStatistics toStatistics(Cache cache) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+        CacheStats stats = nativeCache.stats();
+        return new CacheStatistics(cache.getName(), nativeCache.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
+    }
+}
@@ -1,19 +1,36 @@
 package com.moh.yehia.testing.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.moh.yehia.testing.exception.InvalidRequestException;
 import com.moh.yehia.testing.model.Category;
 import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.service.design.CategoryService;
+import com.moh.yehia.testing.service.design.CategoryStatsService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.ETags;
+import com.moh.yehia.testing.util.FieldSelection;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
+
 @RestController
 @RequestMapping("/api/v1/categories")
+// 只在servlet(spring mvc)模式下生效, reactive profile中由ReactiveCategoryController提供相同的接口
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 // 生成一个包含所有finel与@NonNull字段的构造方法
 // 如果变量中有final字段或NonNull字段的变量, 就必须要加这个注解(这两个标注的变量需要在new对象的时候保证有传入, 使用这个注解可以防止方法的构造方法漏掉相关字段)
 @RequiredArgsConstructor
@@ -23,19 +40,70 @@ import java.util.List;
 public class CategoryController {
 	// service对象是单例对象, 要使用final修饰从编译层面保证service的单例属性
     private final CategoryService categoryService;
+    private final CategoryStatsService categoryStatsService;
+    private final ObjectMapper objectMapper;
 
+    // 列表接口按游标分页, 响应体仍是数组, 下一页的游标放在响应头X-Next-Cursor中(最后一页不返回该响应头)
+    // 分类都在内存快照中, fields=id,name 只裁剪响应的JSON
     @GetMapping
-    public List<Category> findAll() {
-        return categoryService.findAll();
+    public ResponseEntity<?> findAll(@RequestParam(value = "fields", required = false) String fields,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "limit", defaultValue = CursorPaging.DEFAULT_LIMIT) int limit,
+                                     WebRequest webRequest) {
+        FieldSelection fieldSelection = FieldSelection.parse(fields, Category.class);
+        // 第一页就能放下全部分类时(通常如此), 直接返回快照中预先序列化好的JSON字节数组, 不再分页也不再序列化
+        // 快照没有变化时ETag不变, 轮询的客户端带上If-None-Match就只会收到304
+        CategorySnapshot snapshot = categoryService.snapshot();
+        if (cursor == null && snapshot.size() <= limit && fieldSelection.isAll() && acceptsJson(webRequest)) {
+            // 快照中有预先压缩好的gzip字节时直接返回(tomcat看到已有Content-Encoding不会再压缩), 压缩后的内容是另一个表示, ETag也不同
+            boolean gzip = snapshot.getGzip() != null && acceptsGzip(webRequest);
+            if (webRequest.checkNotModified(gzip ? snapshot.getEtag() + "-gzip" : snapshot.getEtag())) {
+                return null;
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+            }
+            return response.body(snapshot.getJson());
+        }
+        CursorPage<Category> page = categoryService.findPage(cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPaging.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        if (fieldSelection.isAll()) {
+            return response.body(page.getItems());
+        }
+        return response.body(fieldSelection.render(objectMapper, page.getItems()));
     }
 
     @GetMapping("/{id}")
-    public Category findById(@PathVariable("id") String id) {
+    public Object findById(@PathVariable("id") String id,
+                           @RequestParam(value = "fields", required = false) String fields,
+                           WebRequest webRequest) {
+        FieldSelection fieldSelection = FieldSelection.parse(fields, Category.class);
         Category category = categoryService.findById(id);
         if (category == null) {
             throw new InvalidRequestException("Category not found with this id: " + id);
         }
-        return category;
+        String etag = ETags.of(category.getId(), category.getVersion(), fieldSelection);
+        if (etag != null && webRequest.checkNotModified(etag, ETags.lastModified(category.getLastModifiedDate()))) {
+            return null;
+        }
+        return fieldSelection.isAll() ? category : fieldSelection.render(objectMapper, category);
+    }
+
+    // 每个分类的商品数、总库存和库存价值, 在数据库中统计(聚合或增量维护的汇总文档), 不需要客户端拉取全部商品
+    @GetMapping("/stats")
+    public List<CategoryStats> findAllStats() {
+        return categoryStatsService.findAll();
+    }
+
+    @GetMapping("/{id}/stats")
+    public CategoryStats findStats(@PathVariable("id") String id) {
+        return categoryStatsService.findByCategoryId(id);
     }
 
     @PostMapping
@@ -43,4 +111,43 @@ public class CategoryController {
     public Category save(@Valid @RequestBody CategoryRequest categoryRequest) {
         return categoryService.save(categoryRequest);
     }
+
+    // Accept-Encoding中有gzip(或*)且q不为0
+    private static boolean acceptsGzip(WebRequest webRequest) {
+        String acceptEncoding = webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String value : acceptEncoding.split(",")) {
+            String[] parts = value.trim().split(";");
+            String coding = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(coding) && !"*".equals(coding)) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().replace(" ", "");
+                if (parameter.matches("q=0(\\.0{0,3})?")) {
+                    rejected = true;
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 快照中只有预先序列化好的JSON, 客户端只接受Smile/CBOR等其它格式时findAll走普通的分页和序列化
+    private static boolean acceptsJson(WebRequest webRequest) {
+        String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank()) {
+            return true;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream().anyMatch(mediaType -> mediaType.isCompatibleWith(MediaType.APPLICATION_JSON));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
 }
@@ -1,38 +1,131 @@
 package com.moh.yehia.testing.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
 import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.service.design.CategoryService;
 import com.moh.yehia.testing.service.design.ProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.ETags;
+import com.moh.yehia.testing.util.FieldSelection;
+import com.moh.yehia.testing.util.ProductExpansion;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/v1/products")
+// 只在servlet(spring mvc)模式下生效, reactive profile中由ReactiveProductController提供相同的接口
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequiredArgsConstructor
 @Slf4j
 public class ProductController {
     private final ProductService productService;
+    private final CategoryService categoryService;
+    private final ObjectMapper objectMapper;
 
+    // 过滤条件通过查询参数传入: categoryId, minPrice, maxPrice, inStock, namePrefix, 都可以不传
+    // fields=id,name,price 只返回指定的字段, 数据库也只读取这些字段
+    // expand=category 在每个商品中嵌入它的分类, 整页商品的分类一次查出(大部分直接命中分类快照)
     @GetMapping
-    public List<Product> findAll() {
+    public ResponseEntity<?> findAll(ProductFilter filter,
+                                     @RequestParam(value = "fields", required = false) String fields,
+                                     @RequestParam(value = "expand", required = false) String expand,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "limit", defaultValue = CursorPaging.DEFAULT_LIMIT) int limit) {
         log.info("ProductController :: findAll :: start");
-        return productService.findAll();
+        FieldSelection fieldSelection = FieldSelection.parse(fields, Product.class);
+        boolean expandCategory = ProductExpansion.category(expand);
+        CursorPage<Product> page = productService.findPage(filter, ProductExpansion.queryFields(fieldSelection, expandCategory), cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPaging.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        if (expandCategory) {
+            Map<String, Category> categories = categoryService.findAllById(ProductExpansion.categoryIds(page.getItems()));
+            return response.body(ProductExpansion.render(objectMapper, fieldSelection, page.getItems(), categories));
+        }
+        if (fieldSelection.isAll()) {
+            return response.body(page.getItems());
+        }
+        return response.body(fieldSelection.render(objectMapper, page.getItems()));
+    }
+
+    // 全量导出给同步任务用: 一行一个商品(NDJSON), 边从Mongo游标读边写到响应流, 内存占用与商品总数无关
+    // StreamingResponseBody在异步线程中执行, 所以游标要在lambda里面打开和关闭
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        log.info("ProductController :: export :: start");
+        ObjectWriter writer = objectMapper.writerFor(Product.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<Product> products = productService.streamAll();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                // 去掉根值之间默认的空格分隔符, 每条记录后面自己写换行
+                generator.setRootValueSeparator(null);
+                Iterator<Product> iterator = products.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
+    // 单条查询走findById的缓存(缓存中是完整的商品), fields只裁剪响应的JSON
+    // 响应带ETag(id+version)和Last-Modified; 请求的If-None-Match/If-Modified-Since匹配时直接返回304, 不再序列化(缓存命中时也不查库)
     @GetMapping("/{id}")
-    public Product findById(@PathVariable("id") String id) {
+    public Object findById(@PathVariable("id") String id,
+                           @RequestParam(value = "fields", required = false) String fields,
+                           @RequestParam(value = "expand", required = false) String expand,
+                           WebRequest webRequest) {
         log.info("ProductController :: findById :: start");
+        FieldSelection fieldSelection = FieldSelection.parse(fields, Product.class);
+        boolean expandCategory = ProductExpansion.category(expand);
         Product product = productService.findById(id);
         if (product == null) {
             throw new InvalidRequestException("Product not found with this id: " + id);
         }
-        return product;
+        Category category = expandCategory && product.getCategoryId() != null ? categoryService.findById(product.getCategoryId()) : null;
+        String etag = ETags.of(product.getId(), product.getVersion(), fieldSelection);
+        if (expandCategory) {
+            etag = ETags.withCategory(etag, category);
+        }
+        if (etag != null && webRequest.checkNotModified(etag, ETags.lastModified(product, category))) {
+            return null;
+        }
+        if (expandCategory) {
+            return ProductExpansion.render(objectMapper, fieldSelection, product, category);
+        }
+        return fieldSelection.isAll() ? product : fieldSelection.render(objectMapper, product);
     }
 
     @PostMapping
@@ -41,10 +134,55 @@ public class ProductController {
         log.info("ProductController :: save :: start");
         return productService.save(productRequest);
     }
+    // 批量导入: 请求体可以是JSON数组, 也可以是NDJSON(一行一个对象), MappingIterator对两种格式都是逐条读取
+    // 结果按请求中的顺序逐条返回每条数据是否写入成功
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BatchResult saveBatch(InputStream body) throws IOException {
+        log.info("ProductController :: saveBatch :: start");
+        try (MappingIterator<ProductRequest> productRequests = objectMapper.readerFor(ProductRequest.class).readValues(body)) {
+            return productService.saveAll(productRequests);
+        } catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Malformed batch request body: " + e.getOriginalMessage());
+        } catch (RuntimeException e) {
+            // 请求体中间出现格式错误时无法继续解析, 之前已经写入的分批数据会保留
+            if (e.getCause() instanceof JsonProcessingException cause) {
+                throw new InvalidRequestException("Malformed batch request body: " + cause.getOriginalMessage());
+            }
+            throw e;
+        }
+    }
+
     // put是RESTful请求中的更新,指将传入的id对象的值替换为传入的值
+    // 带If-Match(之前响应中的ETag)时只有商品没被其它请求修改过才会更新, 否则返回409
     @PutMapping("/{id}")
-    public Product update(@PathVariable("id") String id, @RequestBody ProductRequest productRequest) {
+    public ResponseEntity<Product> update(@PathVariable("id") String id,
+                                          @Valid @RequestBody ProductRequest productRequest,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("ProductController :: update :: start");
-        return new Product(id, productRequest.getName(), productRequest.getDescription(), productRequest.getPrice(), productRequest.getStock(), productRequest.getCategoryId());
+        return withETag(productService.update(id, productRequest, ETags.parseVersion(ifMatch, id)));
+    }
+
+    // patch只修改请求中传了的字段, 库存可以用stockDelta做增减, 在数据库中原地完成
+    @PatchMapping("/{id}")
+    public ResponseEntity<Product> patch(@PathVariable("id") String id,
+                                         @Valid @RequestBody ProductPatch productPatch,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.info("ProductController :: patch :: start");
+        return withETag(productService.patch(id, productPatch, ETags.parseVersion(ifMatch, id)));
+    }
+
+    // 预占库存: 库存足够时原子扣减并返回剩余库存, 不够时返回409, 不会出现超卖
+    @PostMapping("/{id}/reserve")
+    public ReservationResult reserve(@PathVariable("id") String id, @Valid @RequestBody ReservationRequest reservationRequest) {
+        log.info("ProductController :: reserve :: start");
+        return productService.reserve(id, reservationRequest.getQuantity());
+    }
+
+    // 更新后的新ETag直接返回给客户端, 下一次条件更新不需要再GET一次
+    private static ResponseEntity<Product> withETag(Product product) {
+        return ResponseEntity.ok()
+                .eTag(ETags.of(product.getId(), product.getVersion(), FieldSelection.all()))
+                .lastModified(ETags.lastModified(product.getLastModifiedDate()))
+                .body(product);
     }
 }
@@ -0,0 +1,82 @@
+package com.moh.yehia.testing.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.service.design.ReactiveCategoryService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.ETags;
+import com.moh.yehia.testing.util.FieldSelection;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// CategoryController的WebFlux版本, 只在reactive profile中生效, 接口路径、参数、响应格式和错误格式都与CategoryController相同
+@RestController
+@RequestMapping("/api/v1/categories")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveCategoryController {
+    private final ReactiveCategoryService reactiveCategoryService;
+    private final ObjectMapper objectMapper;
+
+    @GetMapping
+    public Mono<ResponseEntity<Object>> findAll(@RequestParam(value = "fields", required = false) String fields,
+                                                @RequestParam(value = "cursor", required = false) String cursor,
+                                                @RequestParam(value = "limit", defaultValue = CursorPaging.DEFAULT_LIMIT) int limit) {
+        return Mono.fromCallable(() -> FieldSelection.parse(fields, Category.class))
+                .flatMap(fieldSelection -> reactiveCategoryService.findPage(cursor, limit)
+                        .map(page -> {
+                            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                            if (page.getNextCursor() != null) {
+                                response.header(CursorPaging.NEXT_CURSOR_HEADER, page.getNextCursor());
+                            }
+                            return response.body(fieldSelection.isAll() ? page.getItems() : fieldSelection.render(objectMapper, page.getItems()));
+                        }));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<Object> findById(@PathVariable("id") String id,
+                                 @RequestParam(value = "fields", required = false) String fields,
+                                 ServerWebExchange exchange) {
+        return Mono.fromCallable(() -> FieldSelection.parse(fields, Category.class))
+                .flatMap(fieldSelection -> reactiveCategoryService.findById(id)
+                        .switchIfEmpty(Mono.error(() -> new InvalidRequestException("Category not found with this id: " + id)))
+                        // 与CategoryController相同: ETag匹配时返回空的304响应, 不再序列化
+                        .filter(category -> !notModified(exchange, category, fieldSelection))
+                        .map(category -> fieldSelection.isAll() ? category : fieldSelection.render(objectMapper, category)));
+    }
+
+    @GetMapping("/stats")
+    public Mono<List<CategoryStats>> findAllStats() {
+        return reactiveCategoryService.findAllStats();
+    }
+
+    @GetMapping("/{id}/stats")
+    public Mono<CategoryStats> findStats(@PathVariable("id") String id) {
+        return reactiveCategoryService.findStats(id);
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Category> save(@Valid @RequestBody CategoryRequest categoryRequest) {
+        return reactiveCategoryService.save(categoryRequest);
+    }
+
+    private static boolean notModified(ServerWebExchange exchange, Category category, FieldSelection fieldSelection) {
+        String etag = ETags.of(category.getId(), category.getVersion(), fieldSelection);
+        if (etag == null) {
+            return false;
+        }
+        return category.getLastModifiedDate() == null ? exchange.checkNotModified(etag) : exchange.checkNotModified(etag, category.getLastModifiedDate());
+    }
+}
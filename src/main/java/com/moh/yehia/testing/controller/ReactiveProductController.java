@@ -0,0 +1,178 @@
+package com.moh.yehia.testing.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.ExpandedProduct;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.service.design.ReactiveCategoryService;
+import com.moh.yehia.testing.service.design.ReactiveProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.ETags;
+import com.moh.yehia.testing.util.FieldSelection;
+import com.moh.yehia.testing.util.ProductExpansion;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Map;
+
+// ProductController的WebFlux版本, 只在reactive profile中生效, 接口路径、参数、响应格式和错误格式都与ProductController相同
+@RestController
+@RequestMapping("/api/v1/products")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveProductController {
+    private final ReactiveProductService reactiveProductService;
+    private final ReactiveCategoryService reactiveCategoryService;
+    private final ObjectMapper objectMapper;
+
+    // 一页最多500条, 收集成List后再返回, 这样才能在响应头中带上下一页的游标
+    @GetMapping
+    public Mono<ResponseEntity<Object>> findAll(ProductFilter filter,
+                                                @RequestParam(value = "fields", required = false) String fields,
+                                                @RequestParam(value = "expand", required = false) String expand,
+                                                @RequestParam(value = "cursor", required = false) String cursor,
+                                                @RequestParam(value = "limit", defaultValue = CursorPaging.DEFAULT_LIMIT) int limit) {
+        return Mono.fromCallable(() -> FieldSelection.parse(fields, Product.class))
+                .flatMap(fieldSelection -> {
+                    boolean expandCategory = ProductExpansion.category(expand);
+                    return reactiveProductService.findPage(filter, ProductExpansion.queryFields(fieldSelection, expandCategory), cursor, limit)
+                            // 整页商品的分类用一次$in查询查出
+                            .flatMap(page -> (expandCategory ? reactiveCategoryService.findAllById(ProductExpansion.categoryIds(page.getItems())) : Mono.just(Map.<String, Category>of()))
+                                    .map(categories -> {
+                                        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                                        if (page.getNextCursor() != null) {
+                                            response.header(CursorPaging.NEXT_CURSOR_HEADER, page.getNextCursor());
+                                        }
+                                        if (expandCategory) {
+                                            return response.body(ProductExpansion.render(objectMapper, fieldSelection, page.getItems(), categories));
+                                        }
+                                        return response.body(fieldSelection.isAll() ? page.getItems() : fieldSelection.render(objectMapper, page.getItems()));
+                                    }));
+                });
+    }
+
+    // 全量导出(NDJSON): 直接返回Flux, 每写出一行才向Mongo游标请求下一条, 客户端读得慢时数据库也会读得慢(背压), 内存占用与商品总数无关
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Product> export() {
+        return reactiveProductService.streamAll();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<Object> findById(@PathVariable("id") String id,
+                                 @RequestParam(value = "fields", required = false) String fields,
+                                 @RequestParam(value = "expand", required = false) String expand,
+                                 ServerWebExchange exchange) {
+        return Mono.fromCallable(() -> FieldSelection.parse(fields, Product.class))
+                .flatMap(fieldSelection -> {
+                    boolean expandCategory = ProductExpansion.category(expand);
+                    return reactiveProductService.findById(id)
+                            .switchIfEmpty(Mono.error(() -> new InvalidRequestException("Product not found with this id: " + id)))
+                            .flatMap(product -> expandCategory ? withCategory(product) : Mono.just(new ExpandedProduct(product, null)))
+                            // 与ProductController相同: ETag匹配时返回空的304响应, 不再序列化
+                            .filter(expanded -> !notModified(exchange, expanded, fieldSelection, expandCategory))
+                            .map(expanded -> {
+                                if (expandCategory) {
+                                    return ProductExpansion.render(objectMapper, fieldSelection, expanded.getProduct(), expanded.getCategory());
+                                }
+                                Product product = expanded.getProduct();
+                                return fieldSelection.isAll() ? product : fieldSelection.render(objectMapper, product);
+                            });
+                });
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Product> save(@Valid @RequestBody ProductRequest productRequest) {
+        return reactiveProductService.save(productRequest);
+    }
+
+    // 批量导入: 请求体可以是JSON数组, 也可以是NDJSON(一行一个对象), 两种格式都由Jackson解码器逐条解码, 结果与ProductController相同
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<BatchResult> saveBatch(@RequestBody(required = false) Flux<ProductRequest> productRequests) {
+        return reactiveProductService.saveAll(productRequests == null ? Flux.empty() : productRequests)
+                // 请求体中间出现格式错误时无法继续解码, 之前已经写入的分批数据会保留
+                .onErrorMap(ServerWebInputException.class, ReactiveProductController::malformedBatch);
+    }
+
+    // 带If-Match(之前响应中的ETag)时只有商品没被其它请求修改过才会更新, 否则返回409
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Product>> update(@PathVariable("id") String id,
+                                                @Valid @RequestBody ProductRequest productRequest,
+                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return Mono.defer(() -> reactiveProductService.update(id, productRequest, ETags.parseVersion(ifMatch, id)))
+                .map(ReactiveProductController::withETag);
+    }
+
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<Product>> patch(@PathVariable("id") String id,
+                                               @Valid @RequestBody ProductPatch productPatch,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return Mono.defer(() -> reactiveProductService.patch(id, productPatch, ETags.parseVersion(ifMatch, id)))
+                .map(ReactiveProductController::withETag);
+    }
+
+    @PostMapping("/{id}/reserve")
+    public Mono<ReservationResult> reserve(@PathVariable("id") String id, @Valid @RequestBody ReservationRequest reservationRequest) {
+        return reactiveProductService.reserve(id, reservationRequest.getQuantity());
+    }
+
+    // 分类不存在时category为null
+    private Mono<ExpandedProduct> withCategory(Product product) {
+        if (product.getCategoryId() == null) {
+            return Mono.just(new ExpandedProduct(product, null));
+        }
+        return reactiveCategoryService.findById(product.getCategoryId())
+                .map(category -> new ExpandedProduct(product, category))
+                .defaultIfEmpty(new ExpandedProduct(product, null));
+    }
+
+    // 与ProductController相同, 更新后的新ETag直接返回给客户端
+    private static ResponseEntity<Product> withETag(Product product) {
+        return ResponseEntity.ok()
+                .eTag(ETags.of(product.getId(), product.getVersion(), FieldSelection.all()))
+                .lastModified(ETags.lastModified(product.getLastModifiedDate()))
+                .body(product);
+    }
+
+    // 解码错误的cause链中是Jackson的异常, 错误信息与ProductController的格式相同
+    private static Throwable malformedBatch(ServerWebInputException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException jsonException) {
+                return new InvalidRequestException("Malformed batch request body: " + jsonException.getOriginalMessage());
+            }
+        }
+        return new InvalidRequestException("Malformed batch request body: " + e.getReason());
+    }
+
+    private static boolean notModified(ServerWebExchange exchange, ExpandedProduct expanded, FieldSelection fieldSelection, boolean expandCategory) {
+        Product product = expanded.getProduct();
+        String etag = ETags.of(product.getId(), product.getVersion(), fieldSelection);
+        if (expandCategory) {
+            etag = ETags.withCategory(etag, expanded.getCategory());
+        }
+        if (etag == null) {
+            return false;
+        }
+        long lastModified = ETags.lastModified(product, expanded.getCategory());
+        return lastModified < 0 ? exchange.checkNotModified(etag) : exchange.checkNotModified(etag, Instant.ofEpochMilli(lastModified));
+    }
+}
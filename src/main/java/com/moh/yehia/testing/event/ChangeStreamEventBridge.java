@@ -0,0 +1,43 @@
+package com.moh.yehia.testing.event;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+
+// 把Mongo change stream收到的变更转换成EntityChangeEvent, 发布到spring的进程内事件总线
+@RequiredArgsConstructor
+public class ChangeStreamEventBridge {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public MessageListener<ChangeStreamDocument<Document>, Document> listenerFor(Class<?> entityType) {
+        return message -> applicationEventPublisher.publishEvent(toEvent(entityType, message.getRaw()));
+    }
+
+    public void reset(Class<?> entityType) {
+        applicationEventPublisher.publishEvent(EntityChangeEvent.reset(entityType));
+    }
+
+    static EntityChangeEvent toEvent(Class<?> entityType, ChangeStreamDocument<Document> change) {
+        String operation = change.getOperationType().getValue();
+        BsonDocument documentKey = change.getDocumentKey();
+        // drop/rename/invalidate等集合级别的事件没有documentKey
+        if (documentKey == null || !documentKey.containsKey("_id")) {
+            return new EntityChangeEvent(entityType, null, operation);
+        }
+        return new EntityChangeEvent(entityType, idAsString(documentKey.get("_id")), operation);
+    }
+
+    private static String idAsString(BsonValue id) {
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.toString();
+    }
+}
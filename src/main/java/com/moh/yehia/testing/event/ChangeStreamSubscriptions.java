@@ -0,0 +1,121 @@
+package com.moh.yehia.testing.event;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 管理每个集合的change stream订阅: 订阅出错结束后容器不会自动重新订阅, 这里定时检查, 从最后收到的resume token处重新订阅
+// 订阅中断期间其它实例的写入不会让本地缓存失效, 所以中断时通知订阅方清空缓存, 同时健康检查(/actuator/health中的changeStreamSubscriptions)显示为DOWN
+@Slf4j
+public class ChangeStreamSubscriptions implements HealthIndicator {
+    private final MessageListenerContainer container;
+    private final MongoTemplate mongoTemplate;
+    private final ChangeStreamEventBridge changeStreamEventBridge;
+    private final List<Watch> watches;
+
+    public ChangeStreamSubscriptions(MessageListenerContainer container, MongoTemplate mongoTemplate,
+                                     ChangeStreamEventBridge changeStreamEventBridge, List<Class<?>> entityTypes) {
+        this.container = container;
+        this.mongoTemplate = mongoTemplate;
+        this.changeStreamEventBridge = changeStreamEventBridge;
+        this.watches = entityTypes.stream().map(Watch::new).toList();
+        watches.forEach(this::subscribe);
+    }
+
+    @Scheduled(fixedDelayString = "${app.change-streams.retry-interval:5000}",
+            initialDelayString = "${app.change-streams.retry-interval:5000}")
+    public void resubscribeFailed() {
+        if (!container.isRunning()) {
+            return;
+        }
+        for (Watch watch : watches) {
+            if (watch.failed) {
+                container.remove(watch.subscription);
+                subscribe(watch);
+            }
+        }
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        boolean up = true;
+        for (Watch watch : watches) {
+            String collection = mongoTemplate.getCollectionName(watch.entityType);
+            details.put(collection, watch.failed ? "DOWN" : "UP");
+            if (watch.failed) {
+                up = false;
+                details.put(collection + ".error", String.valueOf(watch.lastError));
+            }
+        }
+        return (up ? Health.up() : Health.down()).withDetails(details).build();
+    }
+
+    private void subscribe(Watch watch) {
+        BsonValue resumeToken = watch.resumeToken.get();
+        MessageListener<ChangeStreamDocument<Document>, Document> bridge = changeStreamEventBridge.listenerFor(watch.entityType);
+        MessageListener<ChangeStreamDocument<Document>, Document> listener = message -> {
+            watch.received = true;
+            watch.resumeToken.set(message.getRaw().getResumeToken());
+            bridge.onMessage(message);
+        };
+        ChangeStreamRequest.ChangeStreamRequestBuilder<Document> request = ChangeStreamRequest.<Document>builder()
+                .collection(mongoTemplate.getCollectionName(watch.entityType))
+                .publishTo(listener);
+        if (resumeToken != null) {
+            request.resumeAfter(resumeToken);
+        }
+        watch.received = false;
+        watch.failed = false;
+        watch.subscription = container.register(request.build(), Document.class, error -> failed(watch, error));
+        if (resumeToken == null && watch.lastError != null) {
+            // 没有resume token时无法补上中断期间的变更, 重新订阅之后再清空一次缓存
+            changeStreamEventBridge.reset(watch.entityType);
+        }
+    }
+
+    private void failed(Watch watch, Throwable error) {
+        Subscription subscription = watch.subscription;
+        if (subscription != null && subscription.isActive()) {
+            // 监听器处理单条消息出错, 订阅仍在运行; 这条变更可能没有生效, 清空缓存
+            log.warn("ChangeStreamSubscriptions :: failed to handle change on {}, resetting local caches", watch.entityType.getSimpleName(), error);
+            changeStreamEventBridge.reset(watch.entityType);
+            return;
+        }
+        log.warn("ChangeStreamSubscriptions :: change stream on {} failed, resetting local caches", watch.entityType.getSimpleName(), error);
+        watch.lastError = error;
+        watch.failed = true;
+        // 从resume token重新订阅后一条消息都没收到就又失败了(比如token已经不在oplog中), 下次不带token重新开始
+        if (!watch.received) {
+            watch.resumeToken.set(null);
+        }
+        changeStreamEventBridge.reset(watch.entityType);
+    }
+
+    private static final class Watch {
+        private final Class<?> entityType;
+        private final AtomicReference<BsonValue> resumeToken = new AtomicReference<>();
+        private volatile Subscription subscription;
+        private volatile boolean received;
+        private volatile boolean failed;
+        private volatile Throwable lastError;
+
+        private Watch(Class<?> entityType) {
+            this.entityType = entityType;
+        }
+    }
+}
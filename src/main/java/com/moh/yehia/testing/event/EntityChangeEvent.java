@@ -0,0 +1,21 @@
+package com.moh.yehia.testing.event;
+
+import lombok.Value;
+
+// 进程内事件: 某个实体在数据库中发生了变化(可能来自任意一个实例的写入)
+// 通过spring的ApplicationEventPublisher发布, 用@EventListener订阅, 不需要额外的消息中间件
+@Value
+public class EntityChangeEvent {
+    Class<?> entityType;
+    // 为null时表示无法确定是哪条数据变化了(集合被删除/重命名, 或变更流中断), 订阅方应清空该类型的全部缓存
+    String id;
+    String operation;
+
+    public static EntityChangeEvent reset(Class<?> entityType) {
+        return new EntityChangeEvent(entityType, null, "reset");
+    }
+
+    public boolean isReset() {
+        return id == null;
+    }
+}
@@ -0,0 +1,8 @@
+package com.moh.yehia.testing.exception;
+
+public class InsufficientStockException extends RuntimeException {
+
+    public InsufficientStockException(String message) {
+        super(message);
+    }
+}
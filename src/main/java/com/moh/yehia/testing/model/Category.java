@@ -4,8 +4,13 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
@@ -13,8 +18,18 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Builder
 @Document
 public class Category {
-    @Id
+    // 与Product.id相同, 新旧id都按字符串保存
+    @MongoId(FieldType.STRING)
     private String id;
     private String name;
     private String description;
+    // 与Product相同, 保存时自动维护, 用于生成ETag/Last-Modified
+    @Version
+    private Long version;
+    @LastModifiedDate
+    private Instant lastModifiedDate;
+
+    public Category(String id, String name, String description) {
+        this(id, name, description, null, null);
+    }
 }
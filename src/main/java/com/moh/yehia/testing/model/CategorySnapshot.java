@@ -0,0 +1,87 @@
+package com.moh.yehia.testing.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.ETags;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+// 分类数据的不可变快照: 按id排序的列表 + id索引 + 预先序列化好的JSON字节数组
+// 分类集合很小又读得很频繁, 所以整份放在内存里, 有变化时整体重建后原子替换, 读请求不加锁也不需要再序列化
+@Getter
+public final class CategorySnapshot {
+    private final List<Category> categories;
+    private final Map<String, Category> categoriesById;
+    private final byte[] json;
+    private final String[] sortedIds;
+    // JSON内容的摘要, 快照不变时ETag就不变, 客户端可以用If-None-Match直接得到304
+    private final String etag;
+    // 预先gzip压缩好的JSON, 客户端支持gzip时直接返回, 不需要每次请求都压缩一遍; JSON小于压缩阈值(或关闭了压缩)时为null
+    private final byte[] gzip;
+
+    private CategorySnapshot(List<Category> categories, byte[] json, int gzipMinSize) {
+        this.categories = categories;
+        this.categoriesById = categories.stream().collect(Collectors.toUnmodifiableMap(Category::getId, Function.identity()));
+        this.json = json;
+        this.sortedIds = categories.stream().map(Category::getId).toArray(String[]::new);
+        this.etag = ETags.of(json);
+        this.gzip = gzipMinSize >= 0 && json.length >= gzipMinSize ? gzip(json) : null;
+    }
+
+    public static CategorySnapshot of(List<Category> categories, ObjectMapper objectMapper) {
+        return of(categories, objectMapper, -1);
+    }
+
+    // gzipMinSize: JSON达到这个字节数才预先压缩, 小于0表示不压缩
+    public static CategorySnapshot of(List<Category> categories, ObjectMapper objectMapper, int gzipMinSize) {
+        List<Category> sortedCategories = categories.stream()
+                .sorted(Comparator.comparing(Category::getId))
+                .toList();
+        try {
+            return new CategorySnapshot(sortedCategories, objectMapper.writeValueAsBytes(sortedCategories), gzipMinSize);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize category snapshot", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compress category snapshot", e);
+        }
+        return compressed.toByteArray();
+    }
+
+    public Category get(String id) {
+        return categoriesById.get(id);
+    }
+
+    public int size() {
+        return categories.size();
+    }
+
+    // 在内存中按id做游标分页, 规则与数据库的 _id > afterId 一致
+    public CursorPage<Category> page(String afterId, int limit) {
+        int from = 0;
+        if (!afterId.isEmpty()) {
+            int position = Arrays.binarySearch(sortedIds, afterId);
+            from = position >= 0 ? position + 1 : -(position + 1);
+        }
+        int to = Math.min(from + limit, sortedIds.length);
+        String nextCursor = to < sortedIds.length ? CursorPaging.encode(sortedIds[to - 1]) : null;
+        return new CursorPage<>(categories.subList(from, to), nextCursor);
+    }
+}
@@ -0,0 +1,33 @@
+package com.moh.yehia.testing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.math.BigDecimal;
+
+// 一个分类下的商品统计: 商品数、总库存、库存价值(sum(price * stock))
+// 开启增量维护(app.categories.stats.incremental)时, 同时也是categoryStats集合中的汇总文档, _id为分类id
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("categoryStats")
+public class CategoryStats {
+    // 分类id按字符串保存, 与Category.id一致
+    @MongoId(FieldType.STRING)
+    private String categoryId;
+    private long productCount;
+    private long totalStock;
+    // 以Decimal128保存, 增量维护时可以直接在数据库中$inc, 不会有精度损失
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal stockValue;
+
+    // 还没有任何商品的分类
+    public static CategoryStats empty(String categoryId) {
+        return new CategoryStats(categoryId, 0, 0, BigDecimal.ZERO);
+    }
+}
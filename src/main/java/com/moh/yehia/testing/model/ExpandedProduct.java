@@ -0,0 +1,17 @@
+package com.moh.yehia.testing.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// expand=category时的响应: 商品的字段原样展开在顶层, 另外多一个category字段放它引用的分类
+// 分类不存在(例如已被删除)时category为null
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpandedProduct {
+    @JsonUnwrapped
+    private Product product;
+    private Category category;
+}
@@ -4,22 +4,52 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.MongoId;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 
+// 索引在启动时自动创建(spring.data.mongodb.auto-index-creation), 对应ProductQueries中支持的过滤条件
+// 商品列表按_id做游标分页. 指定分类时用category_filter: 等值条件categoryId后面紧跟_id, 索引本身按_id有序, 不需要排序, 其余条件在索引中过滤
+// 没有指定分类时, 名称前缀和价格区间用以该字段开头的索引(name_id, price_id)只扫描满足条件的索引范围, 再对这些结果按_id取前一页(有限的内存排序)
+// 条件很宽(比如前缀只有一个字母)时, 查询优化器会改用_id_索引按顺序读取并过滤, 直到凑够一页
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 @Document
+@CompoundIndex(name = Product.CATEGORY_FILTER_INDEX, def = "{'categoryId': 1, '_id': 1, 'price': 1, 'stock': 1, 'name': 1}")
+@CompoundIndex(name = Product.NAME_INDEX, def = "{'name': 1, '_id': 1}")
+@CompoundIndex(name = Product.PRICE_INDEX, def = "{'price': 1, '_id': 1}")
 public class Product {
-    @Id
+    public static final String CATEGORY_FILTER_INDEX = "category_filter";
+    public static final String NAME_INDEX = "name_id";
+    public static final String PRICE_INDEX = "price_id";
+
+    // id按字符串保存: 新id是24位十六进制(见MonotonicIdGenerator), 不加FieldType.STRING时spring data会把这种字符串自动转成ObjectId保存,
+    // 与旧数据中的UUID字符串类型不同, _id上的游标分页(按_id排序比较)和categoryId引用都会出问题
+    @MongoId(FieldType.STRING)
     private String id;
     private String name;
     private String description;
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal price;
     private int stock;
     private String categoryId;
+    // 每次保存时由spring data维护: version从0开始递增, lastModifiedDate由auditing(MongoAuditingConfig)写入
+    // 二者用于生成ETag/Last-Modified, 客户端可以用If-None-Match做条件请求
+    @Version
+    private Long version;
+    @LastModifiedDate
+    private Instant lastModifiedDate;
+
+    public Product(String id, String name, String description, BigDecimal price, int stock, String categoryId) {
+        this(id, name, description, price, stock, categoryId, null, null);
+    }
 }
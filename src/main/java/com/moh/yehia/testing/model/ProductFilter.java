@@ -0,0 +1,29 @@
+package com.moh.yehia.testing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// 商品列表的过滤条件, 由GET /api/v1/products的查询参数绑定而来, 不传的条件不参与过滤
+// 指定分类时所有条件都在category_filter索引中过滤; 没有分类时名称前缀和价格区间有各自开头的索引(见Product上的说明). 新增条件时要加对应的索引, 并在ProductQueryPlanTest中加上用例
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductFilter {
+    private String categoryId;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private Boolean inStock;
+    private String namePrefix;
+
+    public boolean hasValidPriceRange() {
+        return minPrice == null || maxPrice == null || minPrice.compareTo(maxPrice) <= 0;
+    }
+
+    public boolean isEmpty() {
+        return categoryId == null && minPrice == null && maxPrice == null && inStock == null
+                && (namePrefix == null || namePrefix.isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+package com.moh.yehia.testing.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// PATCH请求体: 只传需要修改的字段, 为null的字段保持不变
+// stock是直接设置库存, stockDelta是在当前库存上增减(如-1表示扣减一件), 二者不能同时传
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPatch {
+    // 传了就不能是空白字符串
+    @Pattern(regexp = ".*\\S.*", message = "must not be blank")
+    private String name;
+
+    @Pattern(regexp = ".*\\S.*", message = "must not be blank")
+    private String description;
+
+    // price以Decimal128存储, 最多34位有效数字
+    @DecimalMin("0")
+    @Digits(integer = 20, fraction = 14)
+    private BigDecimal price;
+
+    @Pattern(regexp = ".*\\S.*", message = "must not be blank")
+    private String categoryId;
+
+    @Min(0)
+    private Integer stock;
+
+    private Integer stockDelta;
+
+    // stock是直接设置, stockDelta是增减, 同时传时$set和$inc会修改同一个字段, Mongo会拒绝这次更新
+    @JsonIgnore
+    @AssertTrue(message = "stock and stockDelta must not be used together")
+    public boolean isStockChangeUnambiguous() {
+        return stock == null || stockDelta == null;
+    }
+
+    public boolean isEmpty() {
+        return name == null && description == null && price == null && categoryId == null
+                && stock == null && (stockDelta == null || stockDelta == 0);
+    }
+}
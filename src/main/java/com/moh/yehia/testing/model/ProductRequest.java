@@ -1,5 +1,6 @@
 package com.moh.yehia.testing.model;
 
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -19,7 +20,9 @@ public class ProductRequest {
     @NotBlank
     private String description;
 
+    // price以Decimal128存储, 最多34位有效数字
     @NotNull
+    @Digits(integer = 20, fraction = 14)
     private BigDecimal price;
 
     @NotBlank
@@ -0,0 +1,19 @@
+package com.moh.yehia.testing.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationRequest {
+    // 单次预占的上限, 同时保证合并后的数量不会轻易超出int范围
+    public static final int MAX_QUANTITY = 1_000_000;
+
+    @Min(1)
+    @Max(MAX_QUANTITY)
+    private int quantity;
+}
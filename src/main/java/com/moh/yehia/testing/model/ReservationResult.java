@@ -0,0 +1,15 @@
+package com.moh.yehia.testing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// 预占成功的结果, remainingStock为本次预占之后的剩余库存
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationResult {
+    private String productId;
+    private int quantity;
+    private int remainingStock;
+}
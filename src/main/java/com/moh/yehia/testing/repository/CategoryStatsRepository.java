@@ -0,0 +1,10 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.CategoryStats;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+// categoryStats集合中的汇总文档, 以及直接在products集合上做的统计聚合(CategoryStatsRepositoryCustom)
+@Repository
+public interface CategoryStatsRepository extends MongoRepository<CategoryStats, String>, CategoryStatsRepositoryCustom {
+}
@@ -0,0 +1,17 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.CategoryStats;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface CategoryStatsRepositoryCustom {
+    // 在products集合上聚合统计, categoryId为null时统计全部分类; 没有商品的分类不在结果中
+    List<CategoryStats> aggregate(String categoryId);
+
+    // 把变化量$inc到分类的汇总文档上, 汇总文档不存在时创建
+    void increment(String categoryId, long productCount, long totalStock, BigDecimal stockValue);
+
+    // 用聚合结果整体替换categoryStats集合($out, 原子替换)
+    void rebuild();
+}
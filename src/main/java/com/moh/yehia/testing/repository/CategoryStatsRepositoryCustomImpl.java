@@ -0,0 +1,50 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class CategoryStatsRepositoryCustomImpl implements CategoryStatsRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<CategoryStats> aggregate(String categoryId) {
+        List<AggregationOperation> pipeline = new ArrayList<>(ProductQueries.categoryStats(categoryId));
+        pipeline.add(Aggregation.sort(Sort.by("_id")));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(Product.class, pipeline), CategoryStats.class).getMappedResults();
+    }
+
+    // upsert + $inc在一次往返中完成, 并发的增量不会互相覆盖
+    @Override
+    public void increment(String categoryId, long productCount, long totalStock, BigDecimal stockValue) {
+        Update update = new Update()
+                .inc("productCount", productCount)
+                .inc("totalStock", totalStock)
+                .inc("stockValue", new Decimal128(stockValue));
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(categoryId)), update, CategoryStats.class);
+    }
+
+    // 结果直接在数据库中写入目标集合, 不需要读回应用
+    @Override
+    public void rebuild() {
+        List<AggregationOperation> pipeline = new ArrayList<>(ProductQueries.categoryStats(null));
+        pipeline.add(Aggregation.out(mongoTemplate.getCollectionName(CategoryStats.class)));
+        mongoTemplate.aggregate(Aggregation.newAggregation(Product.class, pipeline)
+                .withOptions(AggregationOptions.builder().skipOutput().build()), Document.class);
+    }
+}
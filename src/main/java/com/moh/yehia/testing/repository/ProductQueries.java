@@ -0,0 +1,157 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// 根据ProductFilter拼装Mongo查询, 字段名直接使用文档中的字段名
+// 单独放在这里是为了让执行计划测试(ProductQueryPlanTest)和真正的查询用同一份查询条件
+public final class ProductQueries {
+    private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private ProductQueries() {
+    }
+
+    // afterId为空时从第一条开始, 多查一条用来判断是否还有下一页
+    // fields不为空时只从数据库取这些字段(projection), 为空时取全部字段
+    public static Query page(ProductFilter filter, Set<String> fields, String afterId, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter.getCategoryId() != null) {
+            criteria.add(Criteria.where("categoryId").is(filter.getCategoryId()));
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            // price以Decimal128存储, 查询条件也要是Decimal128, 否则QueryMapper会按BigDecimal默认的字符串写入, 变成字符串比较
+            Criteria price = Criteria.where("price");
+            if (filter.getMinPrice() != null) {
+                price.gte(decimal(filter.getMinPrice()));
+            }
+            if (filter.getMaxPrice() != null) {
+                price.lte(decimal(filter.getMaxPrice()));
+            }
+            criteria.add(price);
+        }
+        if (filter.getInStock() != null) {
+            criteria.add(filter.getInStock() ? Criteria.where("stock").gt(0) : Criteria.where("stock").lte(0));
+        }
+        if (filter.getNamePrefix() != null && !filter.getNamePrefix().isEmpty()) {
+            // 只有以^开头且不带选项的正则才能利用索引的有序性做范围扫描
+            criteria.add(Criteria.where("name").regex("^" + escapeRegex(filter.getNamePrefix())));
+        }
+        if (afterId != null && !afterId.isEmpty()) {
+            criteria.add(Criteria.where("_id").gt(afterId));
+        }
+        Query query = criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria));
+        fields.forEach(field -> query.fields().include(field));
+        // 不指定索引: 条件的选择性只有查询优化器能根据数据判断(见Product上的索引说明)
+        return query.with(Sort.by("_id")).limit(limit + 1);
+    }
+
+    // 按id更新一条商品; expectedVersion不为空时只有文档的version仍等于它才会更新(乐观锁)
+    // minimumStock不为空时只有库存至少有这么多才会更新, 用于stockDelta为负数的PATCH, 与库存预占一样保证库存不会被扣成负数
+    public static Query byIdAndVersion(String id, Long expectedVersion, Integer minimumStock) {
+        Criteria criteria = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        if (minimumStock != null) {
+            criteria.and("stock").gte(minimumStock);
+        }
+        return new Query(criteria);
+    }
+
+    // 库存预占: 只有库存足够(stock >= quantity)的文档才会被匹配到, 条件判断和扣减在同一个原子操作中完成
+    public static Query byIdWithStock(String id, int quantity) {
+        Query query = new Query(Criteria.where("_id").is(id).and("stock").gte(quantity));
+        // price和categoryId用于增量维护分类统计(库存价值的变化量)
+        query.fields().include("stock", "price", "categoryId");
+        return query;
+    }
+
+    // 按分类统计商品数、总库存和库存价值(price * stock), categoryId为null时统计全部分类
+    // 指定分类时先按categoryId过滤, 可以走category_filter索引; 迁移(legacyPrices)完成前price可能还是字符串, 先用$toDecimal转换再相乘
+    public static List<AggregationOperation> categoryStats(String categoryId) {
+        Criteria criteria = categoryId == null ? Criteria.where("categoryId").ne(null) : Criteria.where("categoryId").is(categoryId);
+        return List.of(
+                Aggregation.match(criteria),
+                Aggregation.group("categoryId")
+                        .count().as("productCount")
+                        .sum("stock").as("totalStock")
+                        .sum(ArithmeticOperators.Multiply.valueOf(ConvertOperators.valueOf("price").convertToDecimal()).multiplyBy("stock")).as("stockValue"));
+    }
+
+    // 旧数据中以字符串存储的price; $type条件可以用price_id索引只扫描字符串类型的索引范围, 不读取已经转换过的文档
+    public static Query legacyPrices() {
+        return new Query(Criteria.where("price").type(JsonSchemaObject.Type.STRING));
+    }
+
+    // 用管道更新在数据库中把字符串price原地转换为Decimal128, 不需要把文档读到应用中
+    public static AggregationUpdate convertPrice() {
+        return AggregationUpdate.update().set("price").toValueOf(ConvertOperators.valueOf("price").convertToDecimal());
+    }
+
+    // PUT: 覆盖所有可修改的字段
+    public static Update replace(ProductRequest productRequest) {
+        return new Update()
+                .set("name", productRequest.getName())
+                .set("description", productRequest.getDescription())
+                .set("price", productRequest.getPrice())
+                .set("stock", productRequest.getStock())
+                .set("categoryId", productRequest.getCategoryId());
+    }
+
+    // PATCH: 只$set传了的字段, 库存增减用$inc在数据库中原子完成, 不需要先读出当前库存
+    public static Update patch(ProductPatch productPatch) {
+        Update update = new Update();
+        if (productPatch.getName() != null) {
+            update.set("name", productPatch.getName());
+        }
+        if (productPatch.getDescription() != null) {
+            update.set("description", productPatch.getDescription());
+        }
+        if (productPatch.getPrice() != null) {
+            update.set("price", productPatch.getPrice());
+        }
+        if (productPatch.getCategoryId() != null) {
+            update.set("categoryId", productPatch.getCategoryId());
+        }
+        if (productPatch.getStock() != null) {
+            update.set("stock", productPatch.getStock());
+        }
+        if (productPatch.getStockDelta() != null && productPatch.getStockDelta() != 0) {
+            update.inc("stock", productPatch.getStockDelta());
+        }
+        return update;
+    }
+
+    private static Decimal128 decimal(BigDecimal value) {
+        return new Decimal128(value);
+    }
+
+    // 不用Pattern.quote: \Q...\E形式的正则Mongo无法计算出索引的前缀范围
+    static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (REGEX_META_CHARACTERS.indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
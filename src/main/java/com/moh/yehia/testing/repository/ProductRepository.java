@@ -1,9 +1,19 @@
 package com.moh.yehia.testing.repository;
 
 import com.moh.yehia.testing.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
+    Slice<Product> findByIdGreaterThan(String id, Pageable pageable);
+
+    // 返回Stream时底层是一个Mongo游标, 每次只从数据库拉取一批(cursorBatchSize)文档, 用完必须close
+    @Meta(cursorBatchSize = 500)
+    Stream<Product> streamAllBy();
 }
@@ -0,0 +1,30 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 自定义的Repository片段, 放方法名推导不出来、需要直接用MongoTemplate实现的操作
+// Spring Data会自动找到同名加Impl后缀的实现类(ProductRepositoryCustomImpl), 并合并到ProductRepository中
+public interface ProductRepositoryCustom {
+    // 无序批量插入, 返回插入失败的数据在products中的下标及失败原因, 全部成功时返回空Map
+    Map<Integer, String> insertUnordered(List<Product> products);
+
+    // 按过滤条件查询id大于afterId的一页商品, 按id升序; fields不为空时只查询这些字段
+    Slice<Product> findPage(ProductFilter filter, Set<String> fields, String afterId, int limit);
+
+    // 原地更新一条商品并返回更新后的数据, 同时version加1、写入lastModifiedDate
+    // expectedVersion不为空且与数据库中的version不一致, minimumStock不为空且库存少于它, 或id不存在时返回null
+    Product update(String id, Update update, Long expectedVersion, Integer minimumStock);
+
+    // 库存足够时原子扣减quantity件, 返回只包含id、price、categoryId和扣减后stock的商品; 库存不足或id不存在时返回null
+    Product reserve(String id, int quantity);
+
+    // 把旧数据中以字符串存储的price转换为Decimal128, 返回转换的条数; 不修改version和lastModifiedDate
+    long convertLegacyPrices();
+}
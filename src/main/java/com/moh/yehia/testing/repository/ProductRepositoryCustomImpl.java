@@ -0,0 +1,84 @@
+package com.moh.yehia.testing.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<Integer, String> insertUnordered(List<Product> products) {
+        if (products.isEmpty()) {
+            return Map.of();
+        }
+        // 批量写入不经过MongoTemplate.insert, 不会初始化@Version字段, 这里手动设为初始值0
+        products.forEach(product -> {
+            if (product.getVersion() == null) {
+                product.setVersion(0L);
+            }
+        });
+        try {
+            // UNORDERED模式: 一次网络往返写入整批数据, 单条失败(如主键冲突)不会中断其余数据的写入
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)
+                    .insert(products)
+                    .execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            Map<Integer, String> failures = new HashMap<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failures.put(error.getIndex(), error.getMessage());
+            }
+            return failures;
+        }
+    }
+
+    @Override
+    public Slice<Product> findPage(ProductFilter filter, Set<String> fields, String afterId, int limit) {
+        List<Product> products = mongoTemplate.find(ProductQueries.page(filter, fields, afterId, limit), Product.class);
+        boolean hasNext = products.size() > limit;
+        if (hasNext) {
+            products = products.subList(0, limit);
+        }
+        return new SliceImpl<>(products, PageRequest.of(0, limit, Sort.by("id")), hasNext);
+    }
+
+    // findAndModify只修改传入的字段, 不会像save那样读出整个文档再整体覆盖; 一次往返同时完成版本检查、更新和读取新数据
+    // 旧数据没有version字段时, $inc会从0开始加, 之后就和新数据一样了
+    @Override
+    public Product update(String id, Update update, Long expectedVersion, Integer minimumStock) {
+        update.inc("version", 1).currentDate("lastModifiedDate");
+        return mongoTemplate.findAndModify(ProductQueries.byIdAndVersion(id, expectedVersion, minimumStock), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Product reserve(String id, int quantity) {
+        Update update = new Update().inc("stock", -quantity).inc("version", 1).currentDate("lastModifiedDate");
+        return mongoTemplate.findAndModify(ProductQueries.byIdWithStock(id, quantity), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    // 按集合名更新, 不经过实体的@Version处理: 只是存储类型变了, 返回给客户端的数据和ETag都不变
+    @Override
+    public long convertLegacyPrices() {
+        return mongoTemplate.updateMulti(ProductQueries.legacyPrices(), ProductQueries.convertPrice(),
+                mongoTemplate.getCollectionName(Product.class)).getModifiedCount();
+    }
+}
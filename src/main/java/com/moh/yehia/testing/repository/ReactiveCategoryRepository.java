@@ -0,0 +1,13 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Category;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+// 响应式版本的CategoryRepository, 只在reactive profile中创建(见application-reactive.yml)
+@Repository
+public interface ReactiveCategoryRepository extends ReactiveMongoRepository<Category, String> {
+    Flux<Category> findByIdGreaterThan(String id, Pageable pageable);
+}
@@ -0,0 +1,11 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Product;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+// 响应式版本的ProductRepository, 只在reactive profile中创建(见application-reactive.yml)
+// 查询方法返回Flux/Mono, 数据按下游的请求量(背压)从Mongo游标中分批拉取
+@Repository
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String>, ReactiveProductRepositoryCustom {
+}
@@ -0,0 +1,26 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ProductRepositoryCustom的响应式版本, 查询条件与阻塞版本共用ProductQueries
+public interface ReactiveProductRepositoryCustom {
+    // 无序批量插入, 返回写入失败的数据在products中的下标和错误信息, 全部成功时为空
+    Mono<Map<Integer, String>> insertUnordered(List<Product> products);
+
+    // 按过滤条件查询id大于afterId的一页商品, 按id升序; fields不为空时只查询这些字段
+    Mono<Slice<Product>> findPage(ProductFilter filter, Set<String> fields, String afterId, int limit);
+
+    // 条件不满足(id不存在、版本不一致或库存不足minimumStock)时为空
+    Mono<Product> update(String id, Update update, Long expectedVersion, Integer minimumStock);
+
+    // 库存不足或id不存在时为空
+    Mono<Product> reserve(String id, int quantity);
+}
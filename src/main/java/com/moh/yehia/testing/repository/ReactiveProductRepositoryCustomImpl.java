@@ -0,0 +1,77 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class ReactiveProductRepositoryCustomImpl implements ReactiveProductRepositoryCustom {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // 与ProductRepositoryCustomImpl.insertUnordered相同; 响应式的批量写入出错时异常会先被转换(主键冲突变成DuplicateKeyException),
+    // 每条数据的错误要从cause中的MongoBulkWriteException取
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<Product> products) {
+        if (products.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        products.forEach(product -> {
+            if (product.getVersion() == null) {
+                product.setVersion(0L);
+            }
+        });
+        return reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)
+                .insert(products)
+                .execute()
+                .map(result -> Map.<Integer, String>of())
+                .onErrorResume(e -> e.getCause() instanceof MongoBulkWriteException, e -> {
+                    Map<Integer, String> failures = new HashMap<>();
+                    for (BulkWriteError error : ((MongoBulkWriteException) e.getCause()).getWriteErrors()) {
+                        failures.put(error.getIndex(), error.getMessage());
+                    }
+                    return Mono.just(failures);
+                });
+    }
+
+    @Override
+    public Mono<Slice<Product>> findPage(ProductFilter filter, Set<String> fields, String afterId, int limit) {
+        return reactiveMongoTemplate.find(ProductQueries.page(filter, fields, afterId, limit), Product.class)
+                .collectList()
+                .map(products -> {
+                    boolean hasNext = products.size() > limit;
+                    List<Product> content = hasNext ? products.subList(0, limit) : products;
+                    return new SliceImpl<>(content, PageRequest.of(0, limit, Sort.by("id")), hasNext);
+                });
+    }
+
+    // 与ProductRepositoryCustomImpl.update相同: 一次findAndModify完成版本检查、更新和读取新数据
+    @Override
+    public Mono<Product> update(String id, Update update, Long expectedVersion, Integer minimumStock) {
+        update.inc("version", 1).currentDate("lastModifiedDate");
+        return reactiveMongoTemplate.findAndModify(ProductQueries.byIdAndVersion(id, expectedVersion, minimumStock), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Mono<Product> reserve(String id, int quantity) {
+        Update update = new Update().inc("stock", -quantity).inc("version", 1).currentDate("lastModifiedDate");
+        return reactiveMongoTemplate.findAndModify(ProductQueries.byIdWithStock(id, quantity), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+}
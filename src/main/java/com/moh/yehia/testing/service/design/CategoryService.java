@@ -2,13 +2,24 @@ package com.moh.yehia.testing.service.design;
 
 import com.moh.yehia.testing.model.Category;
 import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CursorPage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface CategoryService {
     List<Category> findAll();
 
+    CursorPage<Category> findPage(String cursor, int limit);
+
+    CategorySnapshot snapshot();
+
     Category findById(String categoryId);
 
+    // 按id批量查询, 返回id -> 分类, 不存在的id不在结果中
+    Map<String, Category> findAllById(Collection<String> categoryIds);
+
     Category save(CategoryRequest categoryRequest);
 }
@@ -0,0 +1,13 @@
+package com.moh.yehia.testing.service.design;
+
+import com.moh.yehia.testing.model.CategoryStats;
+
+import java.util.List;
+
+public interface CategoryStatsService {
+    // 分类不存在时抛出InvalidRequestException
+    CategoryStats findByCategoryId(String categoryId);
+
+    // 每个分类一条, 按分类id排序; 没有商品的分类各项为0
+    List<CategoryStats> findAll();
+}
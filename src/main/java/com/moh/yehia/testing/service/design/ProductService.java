@@ -1,14 +1,36 @@
 package com.moh.yehia.testing.service.design;
 
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
 import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.util.FieldSelection;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ProductService {
     List<Product> findAll();
 
+    CursorPage<Product> findPage(ProductFilter filter, FieldSelection fields, String cursor, int limit);
+
+    Stream<Product> streamAll();
+
     Product findById(String productId);
 
     Product save(ProductRequest productRequest);
+
+    BatchResult saveAll(Iterator<ProductRequest> productRequests);
+
+    // expectedVersion为客户端持有的版本(来自If-Match), 为null时不检查版本
+    Product update(String productId, ProductRequest productRequest, Long expectedVersion);
+
+    Product patch(String productId, ProductPatch productPatch, Long expectedVersion);
+
+    // 库存足够时原子扣减quantity件, 库存不足抛出InsufficientStockException
+    ReservationResult reserve(String productId, int quantity);
 }
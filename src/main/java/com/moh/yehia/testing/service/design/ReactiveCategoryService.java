@@ -0,0 +1,27 @@
+package com.moh.yehia.testing.service.design;
+
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.CursorPage;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// CategoryService的响应式版本, 参数和语义与CategoryService保持一致
+public interface ReactiveCategoryService {
+    Mono<CursorPage<Category>> findPage(String cursor, int limit);
+
+    Mono<Category> findById(String categoryId);
+
+    Mono<Map<String, Category>> findAllById(Collection<String> categoryIds);
+
+    Mono<Category> save(CategoryRequest categoryRequest);
+
+    // 分类不存在时以InvalidRequestException结束
+    Mono<CategoryStats> findStats(String categoryId);
+
+    Mono<List<CategoryStats>> findAllStats();
+}
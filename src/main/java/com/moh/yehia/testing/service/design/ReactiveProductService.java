@@ -0,0 +1,33 @@
+package com.moh.yehia.testing.service.design;
+
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.CursorPage;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.util.FieldSelection;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// ProductService的响应式版本, 参数和语义与ProductService保持一致
+public interface ReactiveProductService {
+    Mono<CursorPage<Product>> findPage(ProductFilter filter, FieldSelection fields, String cursor, int limit);
+
+    Flux<Product> streamAll();
+
+    Mono<Product> findById(String productId);
+
+    Mono<Product> save(ProductRequest productRequest);
+
+    Mono<BatchResult> saveAll(Flux<ProductRequest> productRequests);
+
+    // expectedVersion为客户端持有的版本(来自If-Match), 为null时不检查版本
+    Mono<Product> update(String productId, ProductRequest productRequest, Long expectedVersion);
+
+    Mono<Product> patch(String productId, ProductPatch productPatch, Long expectedVersion);
+
+    // 库存足够时原子扣减quantity件, 库存不足以InsufficientStockException结束
+    Mono<ReservationResult> reserve(String productId, int quantity);
+}
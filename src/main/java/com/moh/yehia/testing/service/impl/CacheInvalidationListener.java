@@ -0,0 +1,42 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.config.CacheConfig;
+import com.moh.yehia.testing.event.EntityChangeEvent;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// 订阅实体变更事件, 让本实例的findById缓存和分类快照失效
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationListener {
+    private final CacheManager cacheManager;
+    private final CategoryCatalog categoryCatalog;
+
+    @EventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        if (event.getEntityType() == Product.class) {
+            evict(CacheConfig.PRODUCTS, event);
+        } else if (event.getEntityType() == Category.class) {
+            evict(CacheConfig.CATEGORIES, event);
+            // 分类集合很小, 直接整体重新加载, 内容没变时不会替换快照
+            categoryCatalog.refreshQuietly();
+        }
+    }
+
+    private void evict(String cacheName, EntityChangeEvent event) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (event.isReset()) {
+            cache.clear();
+        } else {
+            cache.evict(event.getId());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.moh.yehia.testing.config.AppCacheProperties;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.repository.CategoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 持有当前的分类快照(CategorySnapshot), 所有读操作都直接读AtomicReference中的快照
+// 快照在启动时构建, 本实例保存分类时增量更新, 另外定时从数据库重新加载(发现有变化才替换), 以同步其它实例写入的数据
+@Component
+@Slf4j
+public class CategoryCatalog {
+    private final CategoryRepository categoryRepository;
+    private final ObjectMapper objectMapper;
+    private final boolean loadOnStartup;
+    // 与server.compression的配置一致: 开启压缩且JSON达到min-response-size时, 快照中同时保存gzip压缩后的字节
+    private final int gzipMinSize;
+    private final AtomicReference<CategorySnapshot> current;
+    // 回源也查不到的id(与缓存中的null一样按app.cache.negative-ttl过期), 同一个不存在的categoryId反复写入时不会每次都查库
+    // 快照被替换或本实例新保存分类时清空, 其它实例新建的分类最晚在下一次刷新快照后就能使用
+    private final Cache<String, Boolean> missing;
+    private volatile boolean loaded;
+
+    public CategoryCatalog(CategoryRepository categoryRepository, ObjectMapper objectMapper,
+                           @Value("${app.categories.snapshot.load-on-startup:true}") boolean loadOnStartup,
+                           ServerProperties serverProperties, AppCacheProperties appCacheProperties) {
+        this.categoryRepository = categoryRepository;
+        this.objectMapper = objectMapper;
+        this.loadOnStartup = loadOnStartup;
+        Compression compression = serverProperties.getCompression();
+        this.gzipMinSize = compression.getEnabled() ? (int) compression.getMinResponseSize().toBytes() : -1;
+        this.current = new AtomicReference<>(CategorySnapshot.of(List.of(), objectMapper, gzipMinSize));
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(appCacheProperties.getMaximumSize())
+                .expireAfterWrite(appCacheProperties.getNegativeTtl())
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!loadOnStartup) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (DataAccessException e) {
+            // 启动时数据库不可用不影响启动, 第一次读取时会再加载
+            log.warn("CategoryCatalog :: failed to load category snapshot on startup", e);
+        }
+    }
+
+    // 返回当前快照, 还没成功加载过时先同步加载一次
+    public CategorySnapshot current() {
+        if (!loaded) {
+            refresh();
+        }
+        return current.get();
+    }
+
+    // 只查当前已有的快照, 不触发加载; 查不到返回null, 由调用方决定是否回源查库
+    public Category find(String id) {
+        return current.get().get(id);
+    }
+
+    // 商品写入时校验categoryId: 先查内存快照(只是一次HashMap查找), 快照里没有再回源查库
+    // 回源查到(其它实例刚新建, 本实例还没刷新)时顺便加入快照, 之后同一个分类不再查库; 查不到时记下来, 过期前不再查库
+    public boolean exists(String id) {
+        if (id == null) {
+            return false;
+        }
+        if (current().get(id) != null) {
+            return true;
+        }
+        if (isMissing(id)) {
+            return false;
+        }
+        Optional<Category> category = categoryRepository.findById(id);
+        if (category.isPresent()) {
+            added(category.get());
+            return true;
+        }
+        missing(id);
+        return false;
+    }
+
+    // 不查库: 最近回源查过并且不存在的id, 响应式的写入(ReactiveProductServiceImpl)和exists共用
+    public boolean isMissing(String id) {
+        return missing.getIfPresent(id) != null;
+    }
+
+    // 回源查库也没有查到
+    public void missing(String id) {
+        missing.put(id, Boolean.TRUE);
+        // 查库期间这个分类刚好被加入了快照(added已经清空过), 不能留下这条记录
+        if (current.get().get(id) != null) {
+            missing.invalidate(id);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.categories.snapshot.refresh-interval:30000}",
+            initialDelayString = "${app.categories.snapshot.refresh-interval:30000}")
+    public void refreshQuietly() {
+        try {
+            refresh();
+        } catch (DataAccessException e) {
+            log.warn("CategoryCatalog :: failed to refresh category snapshot", e);
+        }
+    }
+
+    // 从数据库重新加载全部分类, 内容没有变化时保留原快照(包括已序列化好的JSON)
+    // 加载期间如果有本地写入替换了快照, compareAndSet会失败, 此时重新加载, 避免覆盖掉刚保存的分类
+    public void refresh() {
+        while (true) {
+            CategorySnapshot previous = current.get();
+            List<Category> categories = categoryRepository.findAll(Sort.by("id"));
+            if (loaded && previous.getCategories().equals(categories)) {
+                return;
+            }
+            CategorySnapshot snapshot = CategorySnapshot.of(categories, objectMapper, gzipMinSize);
+            if (current.compareAndSet(previous, snapshot)) {
+                loaded = true;
+                missing.invalidateAll();
+                log.info("CategoryCatalog :: category snapshot replaced, {} categories", snapshot.size());
+                return;
+            }
+        }
+    }
+
+    // 本实例新保存了分类: 在当前快照的基础上加入这条数据, 生成新快照后原子替换
+    public void added(Category category) {
+        current.updateAndGet(snapshot -> {
+            List<Category> categories = new ArrayList<>(snapshot.getCategories());
+            categories.removeIf(existing -> existing.getId().equals(category.getId()));
+            categories.add(category);
+            return CategorySnapshot.of(categories, objectMapper, gzipMinSize);
+        });
+        missing.invalidate(category.getId());
+    }
+}
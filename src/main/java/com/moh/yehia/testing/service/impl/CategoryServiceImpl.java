@@ -1,37 +1,91 @@
 package com.moh.yehia.testing.service.impl;
 
+import com.moh.yehia.testing.config.CacheConfig;
 import com.moh.yehia.testing.model.Category;
 import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.repository.CategoryRepository;
 import com.moh.yehia.testing.service.design.CategoryService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.IdGenerator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class CategoryServiceImpl implements CategoryService {
     private final CategoryRepository categoryRepository;
+    private final CategoryCatalog categoryCatalog;
+    private final IdGenerator idGenerator;
 
     @Override
     public List<Category> findAll() {
         return categoryRepository.findAll();
     }
 
+    // 分类列表直接在内存快照上分页, 不再查库
     @Override
+    public CursorPage<Category> findPage(String cursor, int limit) {
+        return categoryCatalog.current().page(CursorPaging.decode(cursor), CursorPaging.normalizeLimit(limit));
+    }
+
+    @Override
+    public CategorySnapshot snapshot() {
+        return categoryCatalog.current();
+    }
+
+    // 先查缓存, 未命中再查库并放入缓存; 查不到时缓存null, 防止不存在的id反复打到数据库
+    @Override
+    @Cacheable(cacheNames = CacheConfig.CATEGORIES, key = "#categoryId")
     public Category findById(String categoryId) {
+        // 先查快照, 快照里没有(例如其它实例刚新建, 本实例还没刷新)再回源查库
+        Category category = categoryCatalog.find(categoryId);
+        if (category != null) {
+            return category;
+        }
         return categoryRepository.findById(categoryId).orElse(null);
     }
 
+    // 先从快照中取, 快照中没有的id用一次$in查询补齐, 一页商品无论引用多少个分类都最多查一次库
+    @Override
+    public Map<String, Category> findAllById(Collection<String> categoryIds) {
+        CategorySnapshot snapshot = categoryCatalog.current();
+        Map<String, Category> categories = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String categoryId : categoryIds) {
+            Category category = snapshot.get(categoryId);
+            if (category != null) {
+                categories.put(categoryId, category);
+            } else {
+                missing.add(categoryId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            categoryRepository.findAllById(missing).forEach(category -> categories.put(category.getId(), category));
+        }
+        return categories;
+    }
+
+    // 写入后用新数据覆盖缓存(包括之前缓存的null)
     @Override
+    @CachePut(cacheNames = CacheConfig.CATEGORIES, key = "#result.id")
     public Category save(CategoryRequest categoryRequest) {
         Category category = Category.builder()
-                .id(UUID.randomUUID().toString())
+                .id(idGenerator.nextId())
                 .name(categoryRequest.getName())
                 .description(categoryRequest.getDescription())
                 .build();
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        categoryCatalog.added(savedCategory);
+        return savedCategory;
     }
 }
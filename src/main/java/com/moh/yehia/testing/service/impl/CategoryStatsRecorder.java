@@ -0,0 +1,124 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.repository.CategoryStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// 增量维护分类统计的汇总文档: 商品写入成功后, 把商品数、库存、库存价值的变化量$inc到所属分类的汇总文档上
+// 汇总更新和商品写入不在同一个事务中(进程在两次写入之间退出、reactive profile中的写入等都不会更新汇总), 所以启动时和之后每隔rebuild-interval用聚合结果整体重建一次
+// 没有开启增量维护(app.categories.stats.incremental=false)时所有方法都不做任何事
+@Component
+@Slf4j
+public class CategoryStatsRecorder {
+    private final CategoryStatsRepository categoryStatsRepository;
+    private final CategoryStatsProperties properties;
+
+    public CategoryStatsRecorder(CategoryStatsRepository categoryStatsRepository, CategoryStatsProperties properties) {
+        this.categoryStatsRepository = categoryStatsRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isIncremental();
+    }
+
+    // 新写入的商品, 同一分类的变化量先在内存中合并, 每个分类只$inc一次
+    public void created(Collection<Product> products) {
+        if (!isEnabled() || products.isEmpty()) {
+            return;
+        }
+        Map<String, Delta> deltas = new HashMap<>();
+        products.forEach(product -> deltas.computeIfAbsent(product.getCategoryId(), id -> new Delta()).add(product, 1));
+        deltas.forEach(this::apply);
+    }
+
+    // 更新前后的商品; 分类改变时从原分类减去、在新分类加上
+    public void changed(Product before, Product after) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (before.getCategoryId() != null && before.getCategoryId().equals(after.getCategoryId())) {
+            Delta delta = new Delta();
+            delta.add(after, 1);
+            delta.add(before, -1);
+            apply(after.getCategoryId(), delta);
+            return;
+        }
+        Delta removed = new Delta();
+        removed.add(before, -1);
+        apply(before.getCategoryId(), removed);
+        Delta added = new Delta();
+        added.add(after, 1);
+        apply(after.getCategoryId(), added);
+    }
+
+    // 预占了quantity件库存, product为预占后的商品(至少包含price和categoryId)
+    public void reserved(Product product, int quantity) {
+        if (!isEnabled()) {
+            return;
+        }
+        Delta delta = new Delta();
+        delta.totalStock = -quantity;
+        delta.stockValue = price(product).multiply(BigDecimal.valueOf(-quantity));
+        apply(product.getCategoryId(), delta);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.categories.stats.rebuild-interval:600000}",
+            initialDelayString = "${app.categories.stats.rebuild-interval:600000}")
+    public void rebuild() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            categoryStatsRepository.rebuild();
+            log.info("CategoryStatsRecorder :: category stats rebuilt");
+        } catch (DataAccessException e) {
+            log.warn("CategoryStatsRecorder :: failed to rebuild category stats", e);
+        }
+    }
+
+    // 商品已经写入成功, 汇总更新失败只记录日志, 由下一次重建修正
+    private void apply(String categoryId, Delta delta) {
+        if (categoryId == null || delta.isZero()) {
+            return;
+        }
+        try {
+            categoryStatsRepository.increment(categoryId, delta.productCount, delta.totalStock, delta.stockValue);
+        } catch (DataAccessException e) {
+            log.warn("CategoryStatsRecorder :: failed to update stats of category {}", categoryId, e);
+        }
+    }
+
+    private static BigDecimal price(Product product) {
+        return product.getPrice() == null ? BigDecimal.ZERO : product.getPrice();
+    }
+
+    private static final class Delta {
+        private long productCount;
+        private long totalStock;
+        private BigDecimal stockValue = BigDecimal.ZERO;
+
+        // sign为1时加上这个商品, 为-1时减去
+        private void add(Product product, int sign) {
+            productCount += sign;
+            totalStock += (long) sign * product.getStock();
+            stockValue = stockValue.add(price(product).multiply(BigDecimal.valueOf((long) sign * product.getStock())));
+        }
+
+        private boolean isZero() {
+            return productCount == 0 && totalStock == 0 && stockValue.signum() == 0;
+        }
+    }
+}
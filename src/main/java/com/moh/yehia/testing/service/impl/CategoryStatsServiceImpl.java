@@ -0,0 +1,48 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.repository.CategoryStatsRepository;
+import com.moh.yehia.testing.service.design.CategoryStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// 统计在数据库中计算, 不把商品读到应用里: 默认每次请求跑一次聚合; 开启增量维护后直接读categoryStats中的汇总文档
+@Service
+@RequiredArgsConstructor
+public class CategoryStatsServiceImpl implements CategoryStatsService {
+    private final CategoryStatsRepository categoryStatsRepository;
+    private final CategoryCatalog categoryCatalog;
+    private final CategoryStatsProperties properties;
+
+    @Override
+    public CategoryStats findByCategoryId(String categoryId) {
+        if (!categoryCatalog.exists(categoryId)) {
+            throw new InvalidRequestException("Category not found with this id: " + categoryId);
+        }
+        if (properties.isIncremental()) {
+            return categoryStatsRepository.findById(categoryId).orElseGet(() -> CategoryStats.empty(categoryId));
+        }
+        return categoryStatsRepository.aggregate(categoryId).stream()
+                .findFirst()
+                .orElseGet(() -> CategoryStats.empty(categoryId));
+    }
+
+    // 以分类快照中的分类为准, 商品引用了不存在的分类时不计入结果
+    @Override
+    public List<CategoryStats> findAll() {
+        List<CategoryStats> stats = properties.isIncremental() ? categoryStatsRepository.findAll() : categoryStatsRepository.aggregate(null);
+        Map<String, CategoryStats> statsById = stats.stream().collect(Collectors.toMap(CategoryStats::getCategoryId, Function.identity()));
+        return categoryCatalog.current().getCategories().stream()
+                .map(Category::getId)
+                .map(categoryId -> statsById.getOrDefault(categoryId, CategoryStats.empty(categoryId)))
+                .toList();
+    }
+}
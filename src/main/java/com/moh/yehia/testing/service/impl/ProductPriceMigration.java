@@ -0,0 +1,41 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+// Product.price改为以Decimal128存储后, 启动时把旧数据中的字符串price在数据库中一次性转换掉
+// 只匹配price仍是字符串的文档, 转换完成后再启动只是一次走price索引的空查询; 多个实例同时执行也不会互相影响
+// 转换完成前读取不受影响(字符串同样能读成BigDecimal), 但价格区间查询匹配不到这些旧数据
+@Component
+@Slf4j
+public class ProductPriceMigration {
+    private final ProductRepository productRepository;
+    private final boolean enabled;
+
+    public ProductPriceMigration(ProductRepository productRepository,
+                                 @Value("${app.products.price-migration.enabled:true}") boolean enabled) {
+        this.productRepository = productRepository;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long converted = productRepository.convertLegacyPrices();
+            if (converted > 0) {
+                log.info("ProductPriceMigration :: converted price of {} products to Decimal128", converted);
+            }
+        } catch (DataAccessException e) {
+            // 数据库不可用不影响启动, 下次启动时再转换
+            log.warn("ProductPriceMigration :: failed to convert legacy prices", e);
+        }
+    }
+}
@@ -1,19 +1,58 @@
 package com.moh.yehia.testing.service.impl;
 
+import com.moh.yehia.testing.config.CacheConfig;
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.model.BatchItemResult;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.CursorPage;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
 import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.repository.ProductQueries;
 import com.moh.yehia.testing.repository.ProductRepository;
 import com.moh.yehia.testing.service.design.ProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.FieldSelection;
+import com.moh.yehia.testing.util.IdGenerator;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
+    // 维护分类统计时更新前要先读出当前版本, 热点商品上一直被其它请求抢先修改时最多重试这么多次
+    static final int MAX_UPDATE_ATTEMPTS = 5;
+
     private final ProductRepository productRepository;
+    private final Validator validator;
+    private final ProductBatchProperties productBatchProperties;
+    private final StockReservationCoalescer stockReservationCoalescer;
+    private final CategoryCatalog categoryCatalog;
+    private final CategoryStatsRecorder categoryStatsRecorder;
+    private final IdGenerator idGenerator;
 
     @Override
     public List<Product> findAll() {
@@ -21,20 +60,209 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
+    // 只选了部分字段时把projection下推到数据库, 返回的Product中没选中的字段为空, 不能放进缓存
+    public CursorPage<Product> findPage(ProductFilter filter, FieldSelection fields, String cursor, int limit) {
+        String afterId = CursorPaging.decode(cursor);
+        int pageSize = CursorPaging.normalizeLimit(limit);
+        Slice<Product> slice;
+        if ((filter == null || filter.isEmpty()) && fields.isAll()) {
+            slice = productRepository.findByIdGreaterThan(afterId, PageRequest.of(0, pageSize, Sort.by("id")));
+        } else {
+            ProductFilter productFilter = filter == null ? new ProductFilter() : filter;
+            validate(productFilter);
+            slice = productRepository.findPage(productFilter, fields.getFields(), afterId, pageSize);
+        }
+        List<Product> products = slice.getContent();
+        String nextCursor = slice.hasNext() ? CursorPaging.encode(products.get(products.size() - 1).getId()) : null;
+        return new CursorPage<>(products, nextCursor);
+    }
+
+    @Override
+    public Stream<Product> streamAll() {
+        return productRepository.streamAllBy();
+    }
+
+    // 先查缓存, 未命中再查库并放入缓存; 查不到时缓存null, 防止不存在的id反复打到数据库
+    @Override
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, key = "#productId")
     public Product findById(String productId) {
         return productRepository.findById(productId).orElse(null);
     }
 
+    // 写入后用新数据覆盖缓存(包括之前缓存的null)
     @Override
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#result.id")
     public Product save(ProductRequest productRequest) {
-        Product product = Product.builder()
-                .id(UUID.randomUUID().toString())
+        requireCategory(productRequest.getCategoryId());
+        Product product = productRepository.save(toProduct(productRequest));
+        categoryStatsRecorder.created(List.of(product));
+        return product;
+    }
+
+    // 边读边处理: 逐条校验, 合法的数据攒够chunkSize条就无序批量写入一次, 不需要把整个请求体放进内存
+    @Override
+    public BatchResult saveAll(Iterator<ProductRequest> productRequests) {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Product> chunk = new ArrayList<>(productBatchProperties.getChunkSize());
+        List<BatchItemResult> chunkResults = new ArrayList<>(productBatchProperties.getChunkSize());
+        // 同一批数据通常只涉及少数几个分类, 每个分类只检查一次
+        Map<String, Boolean> categories = new HashMap<>();
+        int index = 0;
+        while (productRequests.hasNext()) {
+            ProductRequest productRequest = productRequests.next();
+            Map<String, String> errors = validate(validator, productRequest);
+            if (errors.isEmpty() && !categories.computeIfAbsent(productRequest.getCategoryId(), categoryCatalog::exists)) {
+                errors.put("categoryId", "category does not exist");
+            }
+            if (!errors.isEmpty()) {
+                results.add(new BatchItemResult(index++, BatchItemResult.INVALID, null, errors));
+                continue;
+            }
+            Product product = toProduct(productRequest);
+            BatchItemResult result = new BatchItemResult(index++, BatchItemResult.CREATED, product.getId(), null);
+            results.add(result);
+            chunk.add(product);
+            chunkResults.add(result);
+            if (chunk.size() >= productBatchProperties.getChunkSize()) {
+                flush(chunk, chunkResults);
+            }
+        }
+        flush(chunk, chunkResults);
+        int created = (int) results.stream().filter(result -> BatchItemResult.CREATED.equals(result.getStatus())).count();
+        return new BatchResult(created, results.size() - created, results);
+    }
+
+    @Override
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#productId")
+    public Product update(String productId, ProductRequest productRequest, Long expectedVersion) {
+        requireCategory(productRequest.getCategoryId());
+        return update(productId, ProductQueries.replace(productRequest), expectedVersion, null);
+    }
+
+    @Override
+    @CachePut(cacheNames = CacheConfig.PRODUCTS, key = "#productId")
+    public Product patch(String productId, ProductPatch productPatch, Long expectedVersion) {
+        if (productPatch.isEmpty()) {
+            throw new InvalidRequestException("Patch must contain at least one field to change");
+        }
+        if (productPatch.getStock() != null && productPatch.getStockDelta() != null) {
+            throw new InvalidRequestException("stock and stockDelta must not be used together");
+        }
+        if (productPatch.getCategoryId() != null) {
+            requireCategory(productPatch.getCategoryId());
+        }
+        // 扣减库存(stockDelta为负数)时要求扣减后库存不小于0
+        Integer minimumStock = productPatch.getStockDelta() != null && productPatch.getStockDelta() < 0 ? -productPatch.getStockDelta() : null;
+        return update(productId, ProductQueries.patch(productPatch), expectedVersion, minimumStock);
+    }
+
+    // 预占只返回剩余库存, 缓存中的商品直接失效, 下次查询时再从数据库读取
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#productId")
+    public ReservationResult reserve(String productId, int quantity) {
+        if (quantity < 1) {
+            throw new InvalidRequestException("quantity must be greater than or equal to 1");
+        }
+        if (quantity > ReservationRequest.MAX_QUANTITY) {
+            throw new InvalidRequestException("quantity must be less than or equal to " + ReservationRequest.MAX_QUANTITY);
+        }
+        return stockReservationCoalescer.reserve(productId, quantity);
+    }
+
+    // 更新失败时再查一次区分几种情况: id不存在返回400, 版本不一致说明其它请求已经修改过, 返回409; 库存不够扣减返回409(INSUFFICIENT_STOCK)
+    private Product update(String productId, Update update, Long expectedVersion, Integer minimumStock) {
+        if (categoryStatsRecorder.isEnabled()) {
+            return updateWithStats(productId, update, expectedVersion, minimumStock);
+        }
+        Product product = productRepository.update(productId, update, expectedVersion, minimumStock);
+        if (product != null) {
+            return product;
+        }
+        Product current = productRepository.findById(productId)
+                .orElseThrow(() -> new InvalidRequestException("Product not found with this id: " + productId));
+        checkUpdatable(current, expectedVersion, minimumStock);
+        // 重新读到的数据满足条件, 说明是在两次操作之间被其它请求修改过
+        throw new OptimisticLockingFailureException("Product " + productId + " was modified concurrently");
+    }
+
+    // 增量维护分类统计需要修改前的数据: 先读出当前版本, 再以这个版本做条件更新, 保证读到的就是被修改的那一版
+    // 客户端没有带If-Match时, 期间被其它请求修改过就重新读一次再更新, 最多MAX_UPDATE_ATTEMPTS次, 之后返回409, 不会一直占着请求线程
+    private Product updateWithStats(String productId, Update update, Long expectedVersion, Integer minimumStock) {
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            Product before = productRepository.findById(productId)
+                    .orElseThrow(() -> new InvalidRequestException("Product not found with this id: " + productId));
+            checkUpdatable(before, expectedVersion, minimumStock);
+            Product after = productRepository.update(productId, update, before.getVersion(), minimumStock);
+            if (after != null) {
+                categoryStatsRecorder.changed(before, after);
+                return after;
+            }
+        }
+        throw new OptimisticLockingFailureException("Product " + productId + " was modified concurrently " + MAX_UPDATE_ATTEMPTS + " times in a row");
+    }
+
+    // ReactiveProductServiceImpl中的条件更新用同样的规则区分失败原因
+    static void checkUpdatable(Product product, Long expectedVersion, Integer minimumStock) {
+        if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+            throw new OptimisticLockingFailureException("Product " + product.getId() + " was modified concurrently, expected version " + expectedVersion);
+        }
+        if (minimumStock != null && product.getStock() < minimumStock) {
+            throw new InsufficientStockException("Insufficient stock for product " + product.getId() + ", requested " + minimumStock);
+        }
+    }
+
+    private void requireCategory(String categoryId) {
+        if (!categoryCatalog.exists(categoryId)) {
+            throw new InvalidRequestException("Category not found with this id: " + categoryId);
+        }
+    }
+
+    private void flush(List<Product> chunk, List<BatchItemResult> chunkResults) {
+        Map<Integer, String> failures = productRepository.insertUnordered(chunk);
+        failures.forEach((position, message) -> {
+            BatchItemResult result = chunkResults.get(position);
+            result.setStatus(BatchItemResult.FAILED);
+            result.setId(null);
+            result.setErrors(Map.of("product", message));
+        });
+        if (categoryStatsRecorder.isEnabled()) {
+            List<Product> inserted = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                if (!failures.containsKey(i)) {
+                    inserted.add(chunk.get(i));
+                }
+            }
+            categoryStatsRecorder.created(inserted);
+        }
+        chunk.clear();
+        chunkResults.clear();
+    }
+
+    private void validate(ProductFilter filter) {
+        if (!filter.hasValidPriceRange()) {
+            throw new InvalidRequestException("minPrice must not be greater than maxPrice");
+        }
+    }
+
+    // 与@Valid相同的校验规则, 错误格式与ValidationError.errors保持一致(字段名 -> 错误信息)
+    static Map<String, String> validate(Validator validator, ProductRequest productRequest) {
+        if (productRequest == null) {
+            return Map.of("product", "must not be null");
+        }
+        Set<ConstraintViolation<ProductRequest>> violations = validator.validate(productRequest);
+        Map<String, String> errors = new HashMap<>();
+        violations.forEach(violation -> errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+        return errors;
+    }
+
+    private Product toProduct(ProductRequest productRequest) {
+        return Product.builder()
+                .id(idGenerator.nextId())
                 .name(productRequest.getName())
                 .description(productRequest.getDescription())
                 .price(productRequest.getPrice())
                 .categoryId(productRequest.getCategoryId())
                 .stock(productRequest.getStock())
                 .build();
-        return productRepository.save(product);
     }
 }
@@ -0,0 +1,88 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.CursorPage;
+import com.moh.yehia.testing.repository.ReactiveCategoryRepository;
+import com.moh.yehia.testing.service.design.CategoryStatsService;
+import com.moh.yehia.testing.service.design.ReactiveCategoryService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.IdGenerator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// 只在reactive profile(WebFlux)中创建, 所有方法都不阻塞调用线程
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveCategoryServiceImpl implements ReactiveCategoryService {
+    private final ReactiveCategoryRepository reactiveCategoryRepository;
+    private final CategoryCatalog categoryCatalog;
+    private final CategoryStatsService categoryStatsService;
+    private final IdGenerator idGenerator;
+
+    // 多查一条用来判断是否还有下一页
+    @Override
+    public Mono<CursorPage<Category>> findPage(String cursor, int limit) {
+        return Mono.defer(() -> {
+            int pageSize = CursorPaging.normalizeLimit(limit);
+            return reactiveCategoryRepository.findByIdGreaterThan(CursorPaging.decode(cursor), PageRequest.of(0, pageSize + 1, Sort.by("id")))
+                    .collectList()
+                    .map(categories -> {
+                        if (categories.size() <= pageSize) {
+                            return new CursorPage<>(categories, null);
+                        }
+                        List<Category> page = categories.subList(0, pageSize);
+                        return new CursorPage<>(page, CursorPaging.encode(page.get(pageSize - 1).getId()));
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Category> findById(String categoryId) {
+        return reactiveCategoryRepository.findById(categoryId);
+    }
+
+    // 一次$in查询; 没有引用任何分类时不查库
+    @Override
+    public Mono<Map<String, Category>> findAllById(Collection<String> categoryIds) {
+        if (categoryIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        return reactiveCategoryRepository.findAllById(categoryIds).collectMap(Category::getId);
+    }
+
+    @Override
+    public Mono<Category> save(CategoryRequest categoryRequest) {
+        Category category = Category.builder()
+                .id(idGenerator.nextId())
+                .name(categoryRequest.getName())
+                .description(categoryRequest.getDescription())
+                .build();
+        // 与CategoryServiceImpl.save相同, 保存后加入分类快照, 紧接着用这个分类写商品时不需要等快照刷新
+        return reactiveCategoryRepository.save(category).doOnNext(categoryCatalog::added);
+    }
+
+    // 统计逻辑(增量汇总或聚合)与CategoryStatsService相同, 在boundedElastic线程上执行
+    @Override
+    public Mono<CategoryStats> findStats(String categoryId) {
+        return Mono.fromCallable(() -> categoryStatsService.findByCategoryId(categoryId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<List<CategoryStats>> findAllStats() {
+        return Mono.fromCallable(categoryStatsService::findAll)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,282 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.BatchItemResult;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.CursorPage;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.repository.ProductQueries;
+import com.moh.yehia.testing.repository.ReactiveCategoryRepository;
+import com.moh.yehia.testing.repository.ReactiveProductRepository;
+import com.moh.yehia.testing.service.design.ReactiveProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.FieldSelection;
+import com.moh.yehia.testing.util.IdGenerator;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 只在reactive profile(WebFlux)中创建, 所有方法都不阻塞调用线程
+// 读写都走reactive MongoDB(ReactiveMongoTemplate), 查询和更新条件与ProductServiceImpl共用ProductQueries, 错误的区分方式也相同
+// 与servlet模式的差别: 预占库存每个请求各做一次findAndModify, 不经过StockReservationCoalescer的合并(合并是为了少占用阻塞的请求线程);
+// 分类快照的加载和刷新(CategoryCatalog)、开启增量分类统计(app.categories.stats.incremental)后的汇总写入仍使用阻塞的repository,
+// 前者在后台定时执行, 后者在boundedElastic线程上执行, 都不占用事件循环线程
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveProductServiceImpl implements ReactiveProductService {
+    private final ReactiveProductRepository reactiveProductRepository;
+    private final ReactiveCategoryRepository reactiveCategoryRepository;
+    private final CategoryCatalog categoryCatalog;
+    private final CategoryStatsRecorder categoryStatsRecorder;
+    private final Validator validator;
+    private final ProductBatchProperties productBatchProperties;
+    private final IdGenerator idGenerator;
+
+    // 参数校验放在defer中, 校验失败时以错误信号返回, 而不是在组装阶段直接抛出
+    @Override
+    public Mono<CursorPage<Product>> findPage(ProductFilter filter, FieldSelection fields, String cursor, int limit) {
+        return Mono.defer(() -> {
+            String afterId = CursorPaging.decode(cursor);
+            int pageSize = CursorPaging.normalizeLimit(limit);
+            ProductFilter productFilter = filter == null ? new ProductFilter() : filter;
+            if (!productFilter.hasValidPriceRange()) {
+                return Mono.error(new InvalidRequestException("minPrice must not be greater than maxPrice"));
+            }
+            return reactiveProductRepository.findPage(productFilter, fields.getFields(), afterId, pageSize);
+        }).map(slice -> {
+            List<Product> products = slice.getContent();
+            String nextCursor = slice.hasNext() ? CursorPaging.encode(products.get(products.size() - 1).getId()) : null;
+            return new CursorPage<>(products, nextCursor);
+        });
+    }
+
+    @Override
+    public Flux<Product> streamAll() {
+        return reactiveProductRepository.findAll(Sort.by("id"));
+    }
+
+    @Override
+    public Mono<Product> findById(String productId) {
+        return reactiveProductRepository.findById(productId);
+    }
+
+    @Override
+    public Mono<Product> save(ProductRequest productRequest) {
+        return requireCategory(productRequest.getCategoryId())
+                .then(Mono.defer(() -> reactiveProductRepository.save(toProduct(productRequest))))
+                .flatMap(product -> recordStats(() -> categoryStatsRecorder.created(List.of(product))).thenReturn(product));
+    }
+
+    // 与ProductServiceImpl.saveAll相同: 逐条校验, 合法的数据攒够chunkSize条就无序批量写入一次, 结果按请求中的顺序返回
+    // 请求体按下游的处理进度解码(背压), 不需要把整个请求体放进内存
+    @Override
+    public Mono<BatchResult> saveAll(Flux<ProductRequest> productRequests) {
+        return Flux.defer(() -> {
+                    // 同一批数据通常只涉及少数几个分类, 每个分类只检查一次; concatMap逐条处理, 不会并发访问
+                    Map<String, Boolean> categories = new HashMap<>();
+                    AtomicInteger index = new AtomicInteger();
+                    AtomicInteger valid = new AtomicInteger();
+                    return productRequests
+                            .concatMap(productRequest -> toBatchItem(index.getAndIncrement(), productRequest, categories))
+                            .bufferUntil(item -> item.product != null && valid.incrementAndGet() % productBatchProperties.getChunkSize() == 0)
+                            .concatMap(this::flush);
+                })
+                .collectList()
+                .map(results -> {
+                    int created = (int) results.stream().filter(result -> BatchItemResult.CREATED.equals(result.getStatus())).count();
+                    return new BatchResult(created, results.size() - created, results);
+                });
+    }
+
+    @Override
+    public Mono<Product> update(String productId, ProductRequest productRequest, Long expectedVersion) {
+        return requireCategory(productRequest.getCategoryId())
+                .then(Mono.defer(() -> update(productId, ProductQueries.replace(productRequest), expectedVersion, null)));
+    }
+
+    @Override
+    public Mono<Product> patch(String productId, ProductPatch productPatch, Long expectedVersion) {
+        return Mono.defer(() -> {
+            if (productPatch.isEmpty()) {
+                return Mono.error(new InvalidRequestException("Patch must contain at least one field to change"));
+            }
+            if (productPatch.getStock() != null && productPatch.getStockDelta() != null) {
+                return Mono.error(new InvalidRequestException("stock and stockDelta must not be used together"));
+            }
+            Mono<Void> category = productPatch.getCategoryId() != null ? requireCategory(productPatch.getCategoryId()) : Mono.empty();
+            // 扣减库存(stockDelta为负数)时要求扣减后库存不小于0
+            Integer minimumStock = productPatch.getStockDelta() != null && productPatch.getStockDelta() < 0 ? -productPatch.getStockDelta() : null;
+            return category.then(Mono.defer(() -> update(productId, ProductQueries.patch(productPatch), expectedVersion, minimumStock)));
+        });
+    }
+
+    // 库存足够时一次findAndModify原子扣减; 没有匹配到时再查一次区分商品不存在(400)和库存不足(409)
+    @Override
+    public Mono<ReservationResult> reserve(String productId, int quantity) {
+        return Mono.defer(() -> {
+            if (quantity < 1) {
+                return Mono.error(new InvalidRequestException("quantity must be greater than or equal to 1"));
+            }
+            if (quantity > ReservationRequest.MAX_QUANTITY) {
+                return Mono.error(new InvalidRequestException("quantity must be less than or equal to " + ReservationRequest.MAX_QUANTITY));
+            }
+            return reactiveProductRepository.reserve(productId, quantity)
+                    .flatMap(product -> recordStats(() -> categoryStatsRecorder.reserved(product, quantity))
+                            .thenReturn(new ReservationResult(productId, quantity, product.getStock())))
+                    .switchIfEmpty(Mono.defer(() -> reactiveProductRepository.existsById(productId)
+                            .flatMap(exists -> Mono.error(exists
+                                    ? new InsufficientStockException("Insufficient stock for product " + productId + ", requested " + quantity)
+                                    : new InvalidRequestException("Product not found with this id: " + productId)))));
+        });
+    }
+
+    // 与ProductServiceImpl.update相同: 更新失败时再查一次, 区分id不存在、版本不一致和库存不足
+    private Mono<Product> update(String productId, Update update, Long expectedVersion, Integer minimumStock) {
+        if (categoryStatsRecorder.isEnabled()) {
+            return updateWithStats(productId, update, expectedVersion, minimumStock);
+        }
+        return reactiveProductRepository.update(productId, update, expectedVersion, minimumStock)
+                .switchIfEmpty(Mono.defer(() -> findExisting(productId).flatMap(current -> {
+                    ProductServiceImpl.checkUpdatable(current, expectedVersion, minimumStock);
+                    // 重新读到的数据满足条件, 说明是在两次操作之间被其它请求修改过
+                    return Mono.error(new OptimisticLockingFailureException("Product " + productId + " was modified concurrently"));
+                })));
+    }
+
+    // 增量维护分类统计需要修改前的数据: 先读出当前版本, 再以这个版本做条件更新; 期间被修改过就重新读, 最多MAX_UPDATE_ATTEMPTS次
+    private Mono<Product> updateWithStats(String productId, Update update, Long expectedVersion, Integer minimumStock) {
+        Mono<Product> attempt = findExisting(productId).flatMap(before -> {
+            ProductServiceImpl.checkUpdatable(before, expectedVersion, minimumStock);
+            return reactiveProductRepository.update(productId, update, before.getVersion(), minimumStock)
+                    .flatMap(after -> recordStats(() -> categoryStatsRecorder.changed(before, after)).thenReturn(after));
+        });
+        // 前一次没有更新成功(为空)才订阅下一次
+        return Flux.range(0, ProductServiceImpl.MAX_UPDATE_ATTEMPTS)
+                .concatMap(i -> attempt)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new OptimisticLockingFailureException(
+                        "Product " + productId + " was modified concurrently " + ProductServiceImpl.MAX_UPDATE_ATTEMPTS + " times in a row")));
+    }
+
+    private Mono<Product> findExisting(String productId) {
+        return reactiveProductRepository.findById(productId)
+                .switchIfEmpty(Mono.error(() -> new InvalidRequestException("Product not found with this id: " + productId)));
+    }
+
+    private Mono<BatchItem> toBatchItem(int index, ProductRequest productRequest, Map<String, Boolean> categories) {
+        Map<String, String> errors = ProductServiceImpl.validate(validator, productRequest);
+        if (!errors.isEmpty()) {
+            return Mono.just(BatchItem.invalid(index, errors));
+        }
+        Boolean known = categories.get(productRequest.getCategoryId());
+        Mono<Boolean> exists = known != null ? Mono.just(known)
+                : categoryExists(productRequest.getCategoryId()).doOnNext(result -> categories.put(productRequest.getCategoryId(), result));
+        return exists.map(result -> {
+            if (!result) {
+                return BatchItem.invalid(index, new HashMap<>(Map.of("categoryId", "category does not exist")));
+            }
+            Product product = toProduct(productRequest);
+            return new BatchItem(new BatchItemResult(index, BatchItemResult.CREATED, product.getId(), null), product);
+        });
+    }
+
+    // 写入一批中合法的数据, 写入失败的数据改为FAILED, 然后按原来的顺序输出这一批的结果
+    private Flux<BatchItemResult> flush(List<BatchItem> items) {
+        List<BatchItem> valid = items.stream().filter(item -> item.product != null).toList();
+        List<Product> products = valid.stream().map(item -> item.product).toList();
+        return reactiveProductRepository.insertUnordered(new ArrayList<>(products))
+                .flatMap(failures -> {
+                    failures.forEach((position, message) -> {
+                        BatchItemResult result = valid.get(position).result;
+                        result.setStatus(BatchItemResult.FAILED);
+                        result.setId(null);
+                        result.setErrors(Map.of("product", message));
+                    });
+                    List<Product> inserted = new ArrayList<>(products.size());
+                    for (int i = 0; i < products.size(); i++) {
+                        if (!failures.containsKey(i)) {
+                            inserted.add(products.get(i));
+                        }
+                    }
+                    return inserted.isEmpty() ? Mono.<Void>empty() : recordStats(() -> categoryStatsRecorder.created(inserted));
+                })
+                .thenMany(Flux.fromIterable(items).map(item -> item.result));
+    }
+
+    private Mono<Void> requireCategory(String categoryId) {
+        return categoryExists(categoryId)
+                .flatMap(exists -> exists ? Mono.<Void>empty() : Mono.error(new InvalidRequestException("Category not found with this id: " + categoryId)));
+    }
+
+    // 与CategoryCatalog.exists相同: 先查快照和最近查不到的id(都不会触发阻塞的加载), 都没有再用reactive repository回源查库
+    private Mono<Boolean> categoryExists(String categoryId) {
+        if (categoryCatalog.find(categoryId) != null) {
+            return Mono.just(true);
+        }
+        if (categoryCatalog.isMissing(categoryId)) {
+            return Mono.just(false);
+        }
+        return reactiveCategoryRepository.findById(categoryId)
+                .doOnNext(categoryCatalog::added)
+                .map(category -> true)
+                .switchIfEmpty(Mono.fromCallable(() -> {
+                    categoryCatalog.missing(categoryId);
+                    return false;
+                }));
+    }
+
+    // 分类汇总的写入是阻塞的, 只在开启增量统计时放到boundedElastic线程上执行
+    private Mono<Void> recordStats(Runnable recording) {
+        if (!categoryStatsRecorder.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(recording).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private Product toProduct(ProductRequest productRequest) {
+        return Product.builder()
+                .id(idGenerator.nextId())
+                .name(productRequest.getName())
+                .description(productRequest.getDescription())
+                .price(productRequest.getPrice())
+                .categoryId(productRequest.getCategoryId())
+                .stock(productRequest.getStock())
+                .build();
+    }
+
+    // 批量导入中的一条: 校验不通过时product为null
+    private static final class BatchItem {
+        private final BatchItemResult result;
+        private final Product product;
+
+        private BatchItem(BatchItemResult result, Product product) {
+            this.result = result;
+            this.product = product;
+        }
+
+        private static BatchItem invalid(int index, Map<String, String> errors) {
+            return new BatchItem(new BatchItemResult(index, BatchItemResult.INVALID, null, errors), null);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.moh.yehia.testing.service.impl;
+
+import com.moh.yehia.testing.config.ProductReservationProperties;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 库存预占: 每次预占都是一次带条件的$inc(stock >= quantity), 不需要先读出商品
+// 开启合并(coalescing-enabled)后, 同一商品的并发请求先进入该商品的队列, 由一个后台(虚拟)线程把队列中的请求合并成一次$inc
+// 抢购时大量请求集中在少数几个商品上, 合并后这些商品的文档锁竞争和数据库往返次数都会大幅减少
+@Component
+@Slf4j
+public class StockReservationCoalescer implements DisposableBean {
+    private final ProductRepository productRepository;
+    private final ProductReservationProperties properties;
+    private final CategoryStatsRecorder categoryStatsRecorder;
+    private final Map<String, ReservationQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("reserve-", 0).factory());
+
+    public StockReservationCoalescer(ProductRepository productRepository, ProductReservationProperties properties,
+                                     CategoryStatsRecorder categoryStatsRecorder) {
+        this.productRepository = productRepository;
+        this.properties = properties;
+        this.categoryStatsRecorder = categoryStatsRecorder;
+    }
+
+    public ReservationResult reserve(String productId, int quantity) {
+        if (!properties.isCoalescingEnabled()) {
+            return reserveOne(productId, quantity);
+        }
+        PendingReservation pending = new PendingReservation(quantity);
+        ReservationQueue queue = queues.computeIfAbsent(productId, id -> new ReservationQueue());
+        queue.pending.add(pending);
+        // 队列空闲时由本请求启动一个处理线程, 处理线程一直处理到队列为空为止
+        if (queue.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(productId, queue));
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void drain(String productId, ReservationQueue queue) {
+        while (true) {
+            List<PendingReservation> batch = new ArrayList<>();
+            // 合并后的数量不能超出int范围(溢出成负数后stock >= total总能匹配, $inc反而会增加库存), 超出时剩下的请求留给下一批
+            // 队列只有当前这一个处理线程在取, peek到的请求一定就是接下来poll出来的那个
+            long total = 0;
+            PendingReservation next;
+            while (batch.size() < properties.getMaxBatchSize() && (next = queue.pending.peek()) != null
+                    && (batch.isEmpty() || total + next.quantity <= Integer.MAX_VALUE)) {
+                queue.pending.poll();
+                batch.add(next);
+                total += next.quantity;
+            }
+            if (batch.isEmpty()) {
+                queue.draining.set(false);
+                // 释放之后又有请求进来, 并且没有被其它线程接手时继续处理
+                if (queue.pending.isEmpty() || !queue.draining.compareAndSet(false, true)) {
+                    // 空闲的队列从map中移除; 此时刚拿到这个队列的请求仍会由它自己启动处理线程, 只是少合并一次, 结果不受影响
+                    if (queue.pending.isEmpty()) {
+                        queues.remove(productId, queue);
+                    }
+                    return;
+                }
+                continue;
+            }
+            try {
+                reserveBatch(productId, batch);
+            } catch (RuntimeException e) {
+                batch.forEach(pending -> pending.result.completeExceptionally(e));
+            }
+        }
+    }
+
+    // 先尝试一次扣减整批的数量; 库存不够整批时, 退回按到达顺序逐个预占, 能满足的请求仍然成功
+    private void reserveBatch(String productId, List<PendingReservation> batch) {
+        long sum = batch.stream().mapToLong(pending -> pending.quantity).sum();
+        if (batch.size() > 1 && sum <= Integer.MAX_VALUE) {
+            int total = (int) sum;
+            Product product = productRepository.reserve(productId, total);
+            if (product != null) {
+                categoryStatsRecorder.reserved(product, total);
+                // 结果与按到达顺序依次扣减相同: 每个请求的剩余库存 = 最终库存 + 排在它后面的请求的数量
+                int remaining = product.getStock() + total;
+                for (PendingReservation pending : batch) {
+                    remaining -= pending.quantity;
+                    pending.result.complete(new ReservationResult(productId, pending.quantity, remaining));
+                }
+                return;
+            }
+            log.debug("StockReservationCoalescer :: batch of {} for {} does not fit, reserving one by one", batch.size(), productId);
+        }
+        for (PendingReservation pending : batch) {
+            try {
+                pending.result.complete(reserveOne(productId, pending.quantity));
+            } catch (RuntimeException e) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private ReservationResult reserveOne(String productId, int quantity) {
+        Product product = productRepository.reserve(productId, quantity);
+        if (product != null) {
+            categoryStatsRecorder.reserved(product, quantity);
+            return new ReservationResult(productId, quantity, product.getStock());
+        }
+        if (productRepository.existsById(productId)) {
+            throw new InsufficientStockException("Insufficient stock for product " + productId + ", requested " + quantity);
+        }
+        throw new InvalidRequestException("Product not found with this id: " + productId);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static final class ReservationQueue {
+        private final Queue<PendingReservation> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+    }
+
+    private static final class PendingReservation {
+        private final int quantity;
+        private final CompletableFuture<ReservationResult> result = new CompletableFuture<>();
+
+        private PendingReservation(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
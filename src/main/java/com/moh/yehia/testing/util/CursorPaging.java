@@ -0,0 +1,40 @@
+package com.moh.yehia.testing.util;
+
+import com.moh.yehia.testing.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// 游标分页的公共工具: 游标只是上一页最后一条记录的id, 用Base64包装成对前端不透明的token
+// 下一页查询条件为 _id > 上一页最后的id, 走_id索引, 不论翻到多深每页的代价都一样(不像skip/offset越往后越慢)
+public final class CursorPaging {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String DEFAULT_LIMIT = "50";
+    public static final int MAX_LIMIT = 500;
+
+    private CursorPaging() {
+    }
+
+    public static String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 没有游标时返回空字符串, 所有字符串id都大于它, 即从第一条开始
+    public static String decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return "";
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public static int normalizeLimit(int limit) {
+        if (limit < 1) {
+            throw new InvalidRequestException("limit must be greater than or equal to 1");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+}
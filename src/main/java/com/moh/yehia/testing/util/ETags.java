@@ -0,0 +1,80 @@
+package com.moh.yehia.testing.util;
+
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import org.springframework.util.DigestUtils;
+
+import java.time.Instant;
+import java.util.TreeSet;
+
+// 条件请求(If-None-Match / If-Modified-Since)用到的ETag和Last-Modified
+// 返回的ETag不带引号, WebRequest/ServerWebExchange的checkNotModified会补上引号作为强ETag
+public final class ETags {
+    private ETags() {
+    }
+
+    // 单条实体的ETag: id + version, 只要实体被保存过一次version就会变化
+    // 只返回部分字段(fields)时响应内容不同, 所以把字段列表的摘要也拼进去
+    // 还没有version的旧数据返回null, 调用方不做条件请求处理
+    public static String of(String id, Long version, FieldSelection fields) {
+        if (version == null) {
+            return null;
+        }
+        String etag = id + "-" + version;
+        if (fields.isAll()) {
+            return etag;
+        }
+        String selected = String.join(",", new TreeSet<>(fields.getFields()));
+        return etag + "-" + DigestUtils.md5DigestAsHex(selected.getBytes()).substring(0, 8);
+    }
+
+    // 响应中嵌入了分类(expand=category)时, 分类修改后商品本身的ETag不变, 所以把分类的version也拼进去
+    // 分类还没有version(旧数据)时返回null, 不做条件请求处理
+    public static String withCategory(String etag, Category category) {
+        if (etag == null || category == null) {
+            return etag;
+        }
+        return category.getVersion() == null ? null : etag + "-c" + category.getVersion();
+    }
+
+    // 已经序列化好的内容(如分类快照的JSON)直接用内容摘要作为ETag
+    public static String of(byte[] content) {
+        return DigestUtils.md5DigestAsHex(content);
+    }
+
+    // 从If-Match中取出客户端持有的version(格式与of(id, version, fields)相同), 没有If-Match或为*时返回null表示不检查版本
+    public static Long parseVersion(String ifMatch, String id) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String etag = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if (etag.startsWith(prefix) && etag.endsWith("\"")) {
+            String rest = etag.substring(prefix.length(), etag.length() - 1);
+            int end = rest.indexOf('-');
+            try {
+                return Long.parseLong(end < 0 ? rest : rest.substring(0, end));
+            } catch (NumberFormatException e) {
+                // 按格式错误处理
+            }
+        }
+        throw new InvalidRequestException("Invalid If-Match header: " + ifMatch);
+    }
+
+    // 没有修改时间时返回-1, 与checkNotModified中"不检查Last-Modified"的约定一致
+    public static long lastModified(Instant lastModifiedDate) {
+        return lastModifiedDate == null ? -1 : lastModifiedDate.toEpochMilli();
+    }
+
+    // 商品和嵌入的分类中较晚的修改时间; 任何一个没有修改时间时返回-1
+    public static long lastModified(Product product, Category category) {
+        if (category == null) {
+            return lastModified(product.getLastModifiedDate());
+        }
+        if (product.getLastModifiedDate() == null || category.getLastModifiedDate() == null) {
+            return -1;
+        }
+        return Math.max(lastModified(product.getLastModifiedDate()), lastModified(category.getLastModifiedDate()));
+    }
+}
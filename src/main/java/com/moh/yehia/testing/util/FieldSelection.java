@@ -0,0 +1,89 @@
+package com.moh.yehia.testing.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// 解析查询参数fields=id,name,price, 表示响应中只需要这些字段; id总是会返回
+// 不传fields时返回全部字段(all()), 与原来的响应完全一致
+public final class FieldSelection {
+    private static final String ID = "id";
+    private static final FieldSelection ALL = new FieldSelection(Collections.emptySet());
+
+    // 为空表示全部字段
+    private final Set<String> fields;
+
+    private FieldSelection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    public static FieldSelection all() {
+        return ALL;
+    }
+
+    // 只允许实体类中声明的字段, 拼错的字段名直接返回400, 而不是悄悄返回一个空对象
+    public static FieldSelection parse(String fields, Class<?> type) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> allowed = Arrays.stream(type.getDeclaredFields())
+                .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                .map(Field::getName)
+                .collect(Collectors.toSet());
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add(ID);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!allowed.contains(name)) {
+                throw new InvalidRequestException("Unknown field: " + name);
+            }
+            selected.add(name);
+        }
+        return new FieldSelection(Collections.unmodifiableSet(selected));
+    }
+
+    public boolean isAll() {
+        return fields.isEmpty();
+    }
+
+    // 在已选字段的基础上再加一个字段; 全部字段时原样返回
+    public FieldSelection with(String field) {
+        if (isAll() || fields.contains(field)) {
+            return this;
+        }
+        Set<String> selected = new LinkedHashSet<>(fields);
+        selected.add(field);
+        return new FieldSelection(Collections.unmodifiableSet(selected));
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    // 数据已经按projection从数据库中只取了部分字段, 这里再把没选中的字段(值为null或默认值)从JSON中去掉
+    public JsonNode render(ObjectMapper objectMapper, Object value) {
+        ObjectNode node = objectMapper.valueToTree(value);
+        node.retain(fields);
+        return node;
+    }
+
+    public JsonNode render(ObjectMapper objectMapper, Collection<?> values) {
+        ArrayNode array = objectMapper.createArrayNode();
+        values.forEach(value -> array.add(render(objectMapper, value)));
+        return array;
+    }
+}
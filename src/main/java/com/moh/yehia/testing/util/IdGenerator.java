@@ -0,0 +1,7 @@
+package com.moh.yehia.testing.util;
+
+// 新建商品/分类时生成_id的策略, 由app.ids.generator选择(见IdGeneratorConfig)
+// 实现必须是线程安全的, 批量导入时会被频繁调用
+public interface IdGenerator {
+    String nextId();
+}
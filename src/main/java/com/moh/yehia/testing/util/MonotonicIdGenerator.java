@@ -0,0 +1,54 @@
+package com.moh.yehia.testing.util;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// 与ObjectId相同的12字节布局, 以24位十六进制字符串返回: 4字节秒级时间戳 + 5字节进程随机数 + 3字节计数器
+// 时间戳在最前面, 新id总比旧id大, 写入时总是追加在_id索引的最右侧, 不会像随机UUID那样插到B树的任意位置造成页分裂
+// 时间戳和计数器放在同一个AtomicLong中用CAS更新, 同一进程内严格递增且无锁; 同一秒内计数器用完时借用下一秒, 仍然唯一且递增
+// 进程随机数只在创建时用SecureRandom生成一次, 之后生成id不再访问SecureRandom
+public class MonotonicIdGenerator implements IdGenerator {
+    private static final int COUNTER_BITS = 24;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final LongSupplier clock;
+    private final char[] processPart;
+    // 高位为秒级时间戳, 低24位为计数器
+    private final AtomicLong state = new AtomicLong();
+
+    public MonotonicIdGenerator() {
+        this(System::currentTimeMillis, new SecureRandom());
+    }
+
+    MonotonicIdGenerator(LongSupplier clock, Random random) {
+        this.clock = clock;
+        byte[] bytes = new byte[5];
+        random.nextBytes(bytes);
+        this.processPart = new char[10];
+        for (int i = 0; i < bytes.length; i++) {
+            processPart[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            processPart[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+    }
+
+    @Override
+    public String nextId() {
+        long now = (clock.getAsLong() / 1000) << COUNTER_BITS;
+        long next = state.updateAndGet(previous -> Math.max(previous + 1, now));
+        char[] chars = new char[24];
+        writeHex(chars, 0, next >>> COUNTER_BITS, 8);
+        System.arraycopy(processPart, 0, chars, 8, processPart.length);
+        writeHex(chars, 18, next & COUNTER_MASK, 6);
+        return new String(chars);
+    }
+
+    private static void writeHex(char[] chars, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.moh.yehia.testing.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.ExpandedProduct;
+import com.moh.yehia.testing.model.Product;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// 解析查询参数expand=category, 把商品引用的分类直接放进商品响应, 客户端不需要再逐个请求/categories/{id}
+public final class ProductExpansion {
+    public static final String CATEGORY = "category";
+    private static final String CATEGORY_ID = "categoryId";
+
+    private ProductExpansion() {
+    }
+
+    // 目前只支持category, 不认识的值直接返回400
+    public static boolean category(String expand) {
+        if (expand == null || expand.isBlank()) {
+            return false;
+        }
+        boolean category = false;
+        for (String value : expand.split(",")) {
+            String name = value.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!CATEGORY.equals(name)) {
+                throw new InvalidRequestException("Unknown expand: " + name);
+            }
+            category = true;
+        }
+        return category;
+    }
+
+    // 只选了部分字段时, 数据库也要读出categoryId才能找到分类; 响应中是否返回categoryId仍由原来的fields决定
+    public static FieldSelection queryFields(FieldSelection fields, boolean category) {
+        return category ? fields.with(CATEGORY_ID) : fields;
+    }
+
+    // 一页商品引用的分类id去重, 交给CategoryService一次查出来
+    public static Set<String> categoryIds(Collection<Product> products) {
+        return products.stream()
+                .map(Product::getCategoryId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    public static Object render(ObjectMapper objectMapper, FieldSelection fields, Product product, Category category) {
+        if (fields.isAll()) {
+            return new ExpandedProduct(product, category);
+        }
+        ObjectNode node = (ObjectNode) fields.render(objectMapper, product);
+        node.set(CATEGORY, objectMapper.valueToTree(category));
+        return node;
+    }
+
+    public static Object render(ObjectMapper objectMapper, FieldSelection fields, List<Product> products, Map<String, Category> categories) {
+        if (fields.isAll()) {
+            return products.stream()
+                    .map(product -> new ExpandedProduct(product, categories.get(product.getCategoryId())))
+                    .toList();
+        }
+        ArrayNode array = objectMapper.createArrayNode();
+        products.forEach(product -> array.add((JsonNode) render(objectMapper, fields, product, categories.get(product.getCategoryId()))));
+        return array;
+    }
+}
@@ -0,0 +1,11 @@
+package com.moh.yehia.testing.util;
+
+import java.util.UUID;
+
+// 原来的策略: 随机UUID(36个字符), 每次都要访问SecureRandom, 只在需要与旧数据保持完全相同的id格式时使用
+public class UuidIdGenerator implements IdGenerator {
+    @Override
+    public String nextId() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.aop.AppLogger;
+import com.moh.yehia.testing.config.AppLoggingProperties;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
+import com.moh.yehia.testing.controller.ProductController;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.service.design.CategoryService;
+import com.moh.yehia.testing.service.design.ProductService;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.concurrent.TimeUnit;
+
+// AppLogger切片的开销: 直接调用controller方法 vs 经过织入了AppLogger的代理调用
+// 参数抽样率设为0, 测的是绝大多数请求走的路径(只计时, 不打印)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppLoggerBenchmark {
+    private ProductController directController;
+    private ProductController proxiedController;
+    private WebRequest webRequest;
+
+    @Setup
+    public void setUp() {
+        Product product = BenchmarkFixtures.product(1);
+        ProductService productService = BenchmarkFixtures.stub(ProductService.class,
+                method -> "findById".equals(method) ? (proxy, args) -> product : null);
+        webRequest = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+        directController = new ProductController(productService, BenchmarkFixtures.stub(CategoryService.class, method -> null), ObjectMapperConfig.configure(new ObjectMapper()));
+
+        AppLoggingProperties appLoggingProperties = new AppLoggingProperties();
+        appLoggingProperties.setArgsSampleRate(0);
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(directController);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new AppLogger(appLoggingProperties));
+        proxiedController = proxyFactory.getProxy();
+
+        // 基准进程没有经过spring boot的日志初始化, logback默认是DEBUG级别输出到控制台, 这里关掉INFO及以下的日志, 只比较切片本身的开销
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    @Benchmark
+    public Object withoutAspect() {
+        return directController.findById("1", null, null, webRequest);
+    }
+
+    @Benchmark
+    public Object withAppLogger() {
+        return proxiedController.findById("1", null, null, webRequest);
+    }
+}
@@ -0,0 +1,54 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductRequest;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// 基准测试共用的数据和桩对象, 数据是固定的(不用faker), 保证每次运行的输入一样, 结果才能在不同版本之间比较
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    static Product product(int i) {
+        return Product.builder()
+                .id(UUID.nameUUIDFromBytes(("product-" + i).getBytes()).toString())
+                .name("Product " + i)
+                .description("A reasonably long description of product number " + i + " that is similar in size to real catalog data")
+                .price(new BigDecimal("19.99").add(BigDecimal.valueOf(i)))
+                .stock(i % 100 + 1)
+                .categoryId(UUID.nameUUIDFromBytes(("category-" + i % 20).getBytes()).toString())
+                .build();
+    }
+
+    static List<Product> products(int size) {
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(product(i));
+        }
+        return products;
+    }
+
+    static ProductRequest productRequest() {
+        return new ProductRequest("Product", "A reasonably long description of the product", new BigDecimal("19.99"),
+                UUID.nameUUIDFromBytes("category-1".getBytes()).toString(), 10);
+    }
+
+    // 用JDK动态代理实现接口的桩: 只处理handler中给出的方法名, 其它方法调用直接报错, 防止基准测到意料之外的代码
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Function<String, BiFunction<Object, Object[], Object>> handlers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            BiFunction<Object, Object[], Object> handler = handlers.apply(method.getName());
+            if (handler == null) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            return handler.apply(proxy, args);
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
+import com.moh.yehia.testing.model.Product;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 商品列表在JSON / Smile / CBOR三种格式下的编码、解码耗时, encode的结果中同时带有编码后的字节数(辅助计数器bytes)
+// 三种格式使用与消息转换器相同的配置(ObjectMapperConfig.configure)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryFormatBenchmark {
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<>() {
+    };
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    // 默认一页(50)和最大一页(500)
+    @Param({"50", "500"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<Product> products;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = switch (format) {
+            case "smile" -> ObjectMapperConfig.configure(new SmileMapper());
+            case "cbor" -> ObjectMapperConfig.configure(new CBORMapper());
+            default -> ObjectMapperConfig.configure(new ObjectMapper());
+        };
+        products = BenchmarkFixtures.products(size);
+        encoded = objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encode(PayloadSize payloadSize) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(products);
+        payloadSize.record(bytes.length);
+        return bytes;
+    }
+
+    @Benchmark
+    public List<Product> decode() throws IOException {
+        return objectMapper.readValue(encoded, PRODUCT_LIST);
+    }
+
+    // 编码后的字节数作为encode的辅助结果输出(与耗时一起出现在-rf json的secondaryMetrics中)
+    // EVENTS计数器的结果是各次迭代之和, 所以只在第一次正式测量的迭代中记录, 汇总结果就是一次编码的字节数
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long bytes;
+        private boolean recording;
+        private boolean recorded;
+
+        @Setup(Level.Iteration)
+        public void beforeIteration(IterationParams params) {
+            bytes = 0;
+            recording = !recorded && params.getType() == IterationType.MEASUREMENT;
+            recorded |= recording;
+        }
+
+        void record(int size) {
+            if (recording) {
+                bytes = size;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 应用中实际使用的ObjectMapper(ObjectMapperConfig)序列化商品列表、反序列化ProductRequest的耗时
+// serializer: reflection为默认配置, blackbird为开启app.json.blackbird后的配置
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    // 列表接口一页的商品数量: 很少、默认一页(50)、最大一页(500)
+    @Param({"1", "50", "500"})
+    private int size;
+
+    @Param({"reflection", "blackbird"})
+    private String serializer;
+
+    private ObjectMapper objectMapper;
+    private List<Product> products;
+    private byte[] productRequestJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = ObjectMapperConfig.configure(new ObjectMapper(), "blackbird".equals(serializer));
+        products = BenchmarkFixtures.products(size);
+        productRequestJson = objectMapper.writeValueAsBytes(BenchmarkFixtures.productRequest());
+    }
+
+    @Benchmark
+    public byte[] serializeProducts() throws IOException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public ProductRequest deserializeProductRequest() throws IOException {
+        return objectMapper.readValue(productRequestJson, ProductRequest.class);
+    }
+}
@@ -0,0 +1,100 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.config.AppCacheProperties;
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.config.IdGeneratorConfig;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.config.ProductReservationProperties;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.repository.CategoryRepository;
+import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import com.moh.yehia.testing.service.impl.ProductServiceImpl;
+import com.moh.yehia.testing.service.impl.StockReservationCoalescer;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// ProductServiceImpl.save本身的开销(分类校验、生成id、组装Product), 数据库换成了内存中的Map, 不包含网络和Mongo的耗时
+// 多线程运行, 能反映出id生成等共享资源上的竞争; idGenerator对比原来的随机UUID和按时间递增的id(app.ids.generator)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ProductServiceSaveBenchmark {
+    @Param({"uuid", "monotonic"})
+    public String idGenerator;
+
+    private final Map<String, Product> store = new ConcurrentHashMap<>();
+    private ValidatorFactory validatorFactory;
+    private ProductServiceImpl productService;
+    private ProductRequest productRequest;
+
+    @Setup
+    public void setUp() {
+        ProductRepository productRepository = BenchmarkFixtures.stub(ProductRepository.class, method -> "save".equals(method)
+                ? (proxy, args) -> {
+                    Product product = (Product) args[0];
+                    store.put(product.getId(), product);
+                    return product;
+                }
+                : null);
+        productRequest = BenchmarkFixtures.productRequest();
+        // 分类校验走真实的CategoryCatalog, 快照中只有请求里的分类
+        List<Category> categories = List.of(new Category(productRequest.getCategoryId(), "Category", "Category"));
+        CategoryRepository categoryRepository = BenchmarkFixtures.stub(CategoryRepository.class, method -> "findAll".equals(method)
+                ? (proxy, args) -> categories
+                : null);
+        CategoryCatalog categoryCatalog = new CategoryCatalog(categoryRepository, ObjectMapperConfig.configure(new ObjectMapper()), true,
+                new ServerProperties(), new AppCacheProperties());
+        // 分类统计的增量维护默认关闭
+        CategoryStatsRecorder statsRecorder = new CategoryStatsRecorder(null, new CategoryStatsProperties());
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        productService = new ProductServiceImpl(productRepository, validatorFactory.getValidator(), new ProductBatchProperties(),
+                new StockReservationCoalescer(productRepository, new ProductReservationProperties(), statsRecorder), categoryCatalog, statsRecorder,
+                new IdGeneratorConfig().idGenerator(idGenerator));
+    }
+
+    // 每轮迭代后清空, 防止Map无限增长让GC的开销混进结果
+    @TearDown(Level.Iteration)
+    public void clear() {
+        store.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Product save() {
+        return productService.save(productRequest);
+    }
+}
@@ -0,0 +1,71 @@
+package com.moh.yehia.testing.benchmark;
+
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.config.ProductReservationProperties;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import com.moh.yehia.testing.service.impl.StockReservationCoalescer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// 抢购场景: 所有线程同时预占同一个商品, 比较逐个更新和进程内合并(coalescing-enabled)的吞吐量
+// 用一把锁 + 固定的耗时模拟Mongo对同一文档的更新是串行的, 每次更新(一次往返)耗时updateMicros微秒
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class StockReservationBenchmark {
+    @Param({"false", "true"})
+    private boolean coalescing;
+
+    @Param({"200"})
+    private int updateMicros;
+
+    private final Object documentLock = new Object();
+    private StockReservationCoalescer coalescer;
+
+    @Setup
+    public void setUp() {
+        long updateNanos = TimeUnit.MICROSECONDS.toNanos(updateMicros);
+        ProductRepository productRepository = BenchmarkFixtures.stub(ProductRepository.class, method -> "reserve".equals(method)
+                ? (proxy, args) -> {
+                    synchronized (documentLock) {
+                        LockSupport.parkNanos(updateNanos);
+                    }
+                    // 库存足够大, 基准中不会出现库存不足
+                    return Product.builder().id((String) args[0]).stock(Integer.MAX_VALUE / 2).build();
+                }
+                : null);
+        ProductReservationProperties properties = new ProductReservationProperties();
+        properties.setCoalescingEnabled(coalescing);
+        coalescer = new StockReservationCoalescer(productRepository, properties, new CategoryStatsRecorder(null, new CategoryStatsProperties()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        coalescer.destroy();
+    }
+
+    @Benchmark
+    public Object reserve() {
+        return coalescer.reserve("hot-product", 1);
+    }
+}
@@ -0,0 +1,89 @@
+package com.moh.yehia.testing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// 平台线程池 vs 虚拟线程(app.threads.virtual.enabled)处理一批阻塞请求的总耗时
+// 每个"请求"先拿到一个Mongo连接(Semaphore模拟大小为poolSize的连接池), 再阻塞latencyMillis毫秒模拟一次慢查询
+// platform使用200个线程, 与tomcat默认的server.tomcat.threads.max一致
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModelBenchmark {
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String threadModel;
+
+    // 同时到达的请求数
+    @Param({"1000"})
+    private int requests;
+
+    // 连接池比线程池小时两种模式都受连接池限制, 比线程池大时才能看出平台线程数的限制
+    @Param({"100", "500"})
+    private int poolSize;
+
+    @Param({"5", "50"})
+    private int latencyMillis;
+
+    private ExecutorService executor;
+    private Semaphore connectionPool;
+
+    @Setup
+    public void setUp() {
+        executor = "virtual".equals(threadModel)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        connectionPool = new Semaphore(poolSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int handleBurst() throws InterruptedException, ExecutionException {
+        List<Future<Integer>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            int request = i;
+            futures.add(executor.submit(() -> {
+                connectionPool.acquire();
+                try {
+                    Thread.sleep(latencyMillis);
+                    return request;
+                } finally {
+                    connectionPool.release();
+                }
+            }));
+        }
+        int completed = 0;
+        for (Future<Integer> future : futures) {
+            future.get();
+            completed++;
+        }
+        return completed;
+    }
+}
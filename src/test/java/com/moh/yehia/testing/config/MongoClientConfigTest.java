@@ -0,0 +1,56 @@
+package com.moh.yehia.testing.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// app.mongodb.pool.virtual-threads只能在虚拟线程模式下改变连接池
+class MongoClientConfigTest {
+
+    @Test
+    void shouldKeepDriverDefaultsWhenVirtualThreadsDisabled() {
+        // given
+        MongoPoolProperties properties = populateProperties();
+        // when
+        ConnectionPoolSettings pool = poolSettings(properties, false);
+        // then
+        ConnectionPoolSettings defaults = ConnectionPoolSettings.builder().build();
+        Assertions.assertThat(pool.getMinSize()).isEqualTo(defaults.getMinSize());
+        Assertions.assertThat(pool.getMaxWaitTime(TimeUnit.MILLISECONDS)).isEqualTo(defaults.getMaxWaitTime(TimeUnit.MILLISECONDS));
+        Assertions.assertThat(pool.getMaxConnecting()).isEqualTo(defaults.getMaxConnecting());
+        Assertions.assertThat(pool.getMaxSize()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldApplyOverridesWhenVirtualThreadsEnabled() {
+        // given
+        MongoPoolProperties properties = populateProperties();
+        // when
+        ConnectionPoolSettings pool = poolSettings(properties, true);
+        // then
+        Assertions.assertThat(pool.getMinSize()).isEqualTo(10);
+        Assertions.assertThat(pool.getMaxWaitTime(TimeUnit.MILLISECONDS)).isEqualTo(5000);
+        Assertions.assertThat(pool.getMaxConnecting()).isEqualTo(4);
+        // 没有覆盖的项沿用外层的配置
+        Assertions.assertThat(pool.getMaxSize()).isEqualTo(100);
+    }
+
+    private static ConnectionPoolSettings poolSettings(MongoPoolProperties properties, boolean virtualThreadsEnabled) {
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+        new MongoClientConfig().mongoConnectionPoolCustomizer(properties, virtualThreadsEnabled).customize(builder);
+        return builder.build().getConnectionPoolSettings();
+    }
+
+    // 与application.yml中的配置相同
+    private static MongoPoolProperties populateProperties() {
+        MongoPoolProperties properties = new MongoPoolProperties();
+        properties.getVirtualThreads().setMinSize(10);
+        properties.getVirtualThreads().setMaxWaitTime(Duration.ofSeconds(5));
+        properties.getVirtualThreads().setMaxConnecting(4);
+        return properties;
+    }
+}
@@ -0,0 +1,37 @@
+package com.moh.yehia.testing.config;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+
+// chunk-size配置错误时在绑定配置(启动)时就失败
+class ProductBatchPropertiesTest {
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ValidationAutoConfiguration.class))
+            .withUserConfiguration(PropertiesConfig.class);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-1", "10001"})
+    void shouldFailOnStartupWhenChunkSizeOutOfRange(String chunkSize) {
+        contextRunner.withPropertyValues("app.products.batch.chunk-size=" + chunkSize)
+                .run(context -> Assertions.assertThat(context).hasFailed());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1", "500", "10000"})
+    void shouldBindChunkSizeInRange(String chunkSize) {
+        contextRunner.withPropertyValues("app.products.batch.chunk-size=" + chunkSize)
+                .run(context -> Assertions.assertThat(context.getBean(ProductBatchProperties.class).getChunkSize())
+                        .isEqualTo(Integer.parseInt(chunkSize)));
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(ProductBatchProperties.class)
+    static class PropertiesConfig {
+    }
+}
@@ -1,28 +1,43 @@
 package com.moh.yehia.testing.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.github.javafaker.Faker;
 import com.moh.yehia.testing.asserts.ApiErrorAssert;
 import com.moh.yehia.testing.asserts.CategoryAssert;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
+import com.moh.yehia.testing.exception.InvalidRequestException;
 import com.moh.yehia.testing.model.ApiError;
 import com.moh.yehia.testing.model.Category;
 import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.service.design.CategoryService;
+import com.moh.yehia.testing.service.design.CategoryStatsService;
+import com.moh.yehia.testing.util.CursorPaging;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 //继承了编写的GlobalSpringContext对象, 以获得MockMvc与ObjectMapper单例
 class CategoryControllerTest extends GlobalSpringContext {
@@ -30,6 +45,9 @@ class CategoryControllerTest extends GlobalSpringContext {
 	// web层(集成)测试中对于类需要依赖的实例都可以通过@MockBean创建mock测试实例
     @MockBean
     private CategoryService categoryService;
+
+    @MockBean
+    private CategoryStatsService categoryStatsService;
     // 将controller定义的@RequestMapping路径写死方便后续调用
     private final String API_URL = "/api/v1/categories";
     // faker用于生成伪数据, 在测试中很常用. 是个单例对象
@@ -49,7 +67,9 @@ class CategoryControllerTest extends GlobalSpringContext {
         List<Category> expectedCategories = populateRandomCategories();
         // BDDMockito是将Mockito的方法改写得更符合自然语义,更直观易懂的工具类(如when→given,thenReturn→willReturn)
         // 使用BDDMockito写模拟service动作,更加易懂. 这一句设定模拟了service的findall(),return一个mock的expectedCategories数据
-        BDDMockito.given(categoryService.findAll()).willReturn(expectedCategories);
+        // 分类列表由内存快照提供, 快照中的数据按id排序
+        expectedCategories.sort(Comparator.comparing(Category::getId));
+        BDDMockito.given(categoryService.snapshot()).willReturn(CategorySnapshot.of(expectedCategories, objectMapper));
         // 使用MockMvc模拟浏览器请求,perform()表示发起一个请求,参数为请求格式
         // perform()这个方法运行时会模拟将请求发给spring的servlet,然后根据url走到指定的controller方法, 完整调用方法, 但service的调用使用上面定义的模拟service直接返回值
         // perform()执行完后获得返回值,后续的andDo()与andExpect()都是将controller的返回值拿来使用与做判断
@@ -79,6 +99,106 @@ class CategoryControllerTest extends GlobalSpringContext {
         );
     }
 
+    @Test
+    void shouldReturnNotModifiedWhenCategorySnapshotUnchanged() throws Exception {
+        // mock
+        CategorySnapshot snapshot = CategorySnapshot.of(populateRandomCategories(), objectMapper);
+        // given
+        BDDMockito.given(categoryService.snapshot()).willReturn(snapshot);
+        // when, perform & assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .header(HttpHeaders.IF_NONE_MATCH, "\"" + snapshot.getEtag() + "\"")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"" + snapshot.getEtag() + "\""))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    void shouldReturnPrecompressedCategoriesWhenGzipAccepted() throws Exception {
+        // mock: 阈值为0, 快照中一定有压缩好的gzip字节
+        CategorySnapshot snapshot = CategorySnapshot.of(populateRandomCategories(), objectMapper, 0);
+        // given
+        BDDMockito.given(categoryService.snapshot()).willReturn(snapshot);
+        // when, perform & assert
+        MvcResult mvcResult = mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                ).andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"" + snapshot.getEtag() + "-gzip\""))
+                .andReturn();
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(mvcResult.getResponse().getContentAsByteArray()))) {
+            Assertions.assertThat(inputStream.readAllBytes()).isEqualTo(snapshot.getJson());
+        }
+        // 不支持gzip的客户端仍然拿到未压缩的JSON
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity")
+                ).andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(MockMvcResultMatchers.content().bytes(snapshot.getJson()));
+    }
+
+    @Test
+    void shouldSerializeCategoriesWhenOnlyCborAccepted() throws Exception {
+        // mock
+        List<Category> expectedCategories = populateRandomCategories();
+        // given
+        BDDMockito.given(categoryService.snapshot()).willReturn(CategorySnapshot.of(expectedCategories, objectMapper));
+        BDDMockito.given(categoryService.findPage(null, 50)).willReturn(new CursorPage<>(expectedCategories, null));
+        // when, perform & assert: 快照中的JSON字节不能当作CBOR返回
+        MvcResult mvcResult = mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .accept(MediaType.APPLICATION_CBOR)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+        ObjectMapper cborMapper = ObjectMapperConfig.configure(new CBORMapper());
+        Assertions.assertThat(cborMapper.readValue(mvcResult.getResponse().getContentAsByteArray(), new TypeReference<List<Category>>() {
+        })).isEqualTo(expectedCategories);
+    }
+
+    @Test
+    void shouldPageCategoriesWhenCursorGiven() throws Exception {
+        // mock
+        List<Category> expectedCategories = populateRandomCategories();
+        // given
+        BDDMockito.given(categoryService.snapshot()).willReturn(CategorySnapshot.of(expectedCategories, objectMapper));
+        BDDMockito.given(categoryService.findPage("abc", 2)).willReturn(new CursorPage<>(expectedCategories.subList(0, 2), "next"));
+        // when, perform & assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("cursor", "abc")
+                                .param("limit", "2")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(CursorPaging.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void shouldReturnOnlySelectedFieldsOfCategories() throws Exception {
+        // mock
+        List<Category> expectedCategories = populateRandomCategories();
+        // given
+        BDDMockito.given(categoryService.snapshot()).willReturn(CategorySnapshot.of(expectedCategories, objectMapper));
+        BDDMockito.given(categoryService.findPage(null, 50)).willReturn(new CursorPage<>(expectedCategories, null));
+        // when, perform & assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("fields", "name")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(expectedCategories.size()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").exists())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").exists())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].description").doesNotExist());
+    }
+
     @Test
     void shouldReturnCategoryWhenValidId() throws Exception {
         // mock
@@ -161,6 +281,35 @@ class CategoryControllerTest extends GlobalSpringContext {
                 .andReturn();
     }
 
+    @Test
+    void shouldReturnStatsOfAllCategories() throws Exception {
+        // mock
+        List<CategoryStats> stats = List.of(new CategoryStats("a", 2, 15, new BigDecimal("149.85")), CategoryStats.empty("b"));
+        // given
+        BDDMockito.given(categoryStatsService.findAll()).willReturn(stats);
+        // when, verify & assertions
+        mockMvc.perform(MockMvcRequestBuilders.get(API_URL + "/stats"))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].categoryId").value("a"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].productCount").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].totalStock").value(15))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].stockValue").value(149.85))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].productCount").value(0));
+    }
+
+    @Test
+    void shouldReturnBadRequestForStatsOfUnknownCategory() throws Exception {
+        // given
+        BDDMockito.given(categoryStatsService.findByCategoryId("missing"))
+                .willThrow(new InvalidRequestException("Category not found with this id: missing"));
+        // when, verify & assertions
+        mockMvc.perform(MockMvcRequestBuilders.get(API_URL + "/missing/stats"))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Category not found with this id: missing"));
+    }
+
     // 内部方法用于生成数个随机categories返回需要的List对象
     private List<Category> populateRandomCategories() {
     	// 使用Category方法的builder链式调用创建对象, id使用UUID的randomUUID()生成, name使用faker的commerce()(商品相关假数据).department()(随机商品分类名)生成,
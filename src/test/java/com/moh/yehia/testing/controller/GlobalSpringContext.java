@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
 // 这是一个测试基类, 让别的测试类继承以用于测试
@@ -13,6 +14,8 @@ import org.springframework.test.web.servlet.MockMvc;
 @SpringBootTest
 // 自动配置MockMVC,以便用MockMVC模拟http请求,测试API
 @AutoConfigureMockMvc
+// 启用test profile, 加载src/test/resources/application-test.yml中的测试配置
+@ActiveProfiles("test")
 // 只是一个基类, 定义为abstract交给其他测试类进行继承
 public abstract class GlobalSpringContext {
 	// 自动注入MockMvc
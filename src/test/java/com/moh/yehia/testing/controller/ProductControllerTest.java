@@ -1,18 +1,39 @@
 package com.moh.yehia.testing.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.github.javafaker.Faker;
 import com.moh.yehia.testing.asserts.ApiErrorAssert;
+import com.moh.yehia.testing.exception.InsufficientStockException;
 import com.moh.yehia.testing.asserts.ProductAssert;
+import com.moh.yehia.testing.config.ObjectMapperConfig;
 import com.moh.yehia.testing.model.ApiError;
+import com.moh.yehia.testing.model.BatchItemResult;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
 import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.service.design.CategoryService;
 import com.moh.yehia.testing.service.design.ProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.FieldSelection;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
@@ -20,10 +41,15 @@ import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 class ProductControllerTest extends GlobalSpringContext {
 
@@ -32,6 +58,12 @@ class ProductControllerTest extends GlobalSpringContext {
     @MockBean
     private ProductService productService;
 
+    @MockBean
+    private CategoryService categoryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private final String API_URL = "/api/v1/products";
 
     @BeforeAll
@@ -44,13 +76,14 @@ class ProductControllerTest extends GlobalSpringContext {
         // mock
         List<Product> expectedProducts = populateRandomProducts();
         // given
-        BDDMockito.given(productService.findAll()).willReturn(expectedProducts);
+        BDDMockito.given(productService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.eq(FieldSelection.all()), ArgumentMatchers.isNull(), ArgumentMatchers.anyInt())).willReturn(new CursorPage<>(expectedProducts, null));
         // when or assertions or perform mocks
         MvcResult mvcResult = mockMvc.perform(
                         MockMvcRequestBuilders.get(API_URL)
                                 .contentType(MediaType.APPLICATION_JSON)
                 ).andDo(MockMvcResultHandlers.print())
                 .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(CursorPaging.NEXT_CURSOR_HEADER))
                 .andReturn();
         String actualResponseAsString = mvcResult.getResponse().getContentAsString();
         Assertions.assertThat(actualResponseAsString).isEqualToIgnoringWhitespace(
@@ -58,6 +91,190 @@ class ProductControllerTest extends GlobalSpringContext {
         );
     }
 
+    @Test
+    void shouldReturnNextCursorHeaderWhenMoreProductsExist() throws Exception {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        String nextCursor = CursorPaging.encode(expectedProducts.get(expectedProducts.size() - 1).getId());
+        // given
+        BDDMockito.given(productService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.any(FieldSelection.class), ArgumentMatchers.eq("abc"), ArgumentMatchers.eq(3))).willReturn(new CursorPage<>(expectedProducts, nextCursor));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("cursor", "abc")
+                                .param("limit", "3")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(CursorPaging.NEXT_CURSOR_HEADER, nextCursor))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(expectedProducts.size()));
+    }
+
+    @Test
+    void shouldBindFilterFromQueryParameters() throws Exception {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        ProductFilter expectedFilter = new ProductFilter("c1", new BigDecimal("10"), new BigDecimal("99.5"), true, "Sm");
+        // given
+        BDDMockito.given(productService.findPage(ArgumentMatchers.eq(expectedFilter), ArgumentMatchers.any(FieldSelection.class), ArgumentMatchers.isNull(), ArgumentMatchers.anyInt()))
+                .willReturn(new CursorPage<>(expectedProducts, null));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("categoryId", "c1")
+                                .param("minPrice", "10")
+                                .param("maxPrice", "99.5")
+                                .param("inStock", "true")
+                                .param("namePrefix", "Sm")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(expectedProducts)));
+    }
+
+    @Test
+    void shouldReturnOnlySelectedFields() throws Exception {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        // given
+        BDDMockito.given(productService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.argThat(fields -> fields.getFields().containsAll(List.of("id", "name", "price"))),
+                        ArgumentMatchers.isNull(), ArgumentMatchers.anyInt()))
+                .willReturn(new CursorPage<>(expectedProducts, null));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("fields", "name,price")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(expectedProducts.get(0).getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value(expectedProducts.get(0).getName()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].price").exists())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].description").doesNotExist())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].stock").doesNotExist());
+    }
+
+    @Test
+    void shouldRejectUnknownField() throws Exception {
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("fields", "name,weight")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Unknown field: weight"));
+    }
+
+    @Test
+    void shouldEmbedCategoriesWithSingleLookupPerPage() throws Exception {
+        // mock: 前两个商品属于同一个分类, 第三个商品的分类不存在
+        Category category = new Category("c1", "category", "description");
+        List<Product> products = populateRandomProducts();
+        products.get(0).setCategoryId("c1");
+        products.get(1).setCategoryId("c1");
+        products.get(2).setCategoryId("missing");
+        // given
+        BDDMockito.given(productService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.eq(FieldSelection.all()), ArgumentMatchers.isNull(), ArgumentMatchers.anyInt()))
+                .willReturn(new CursorPage<>(products, null));
+        BDDMockito.given(categoryService.findAllById(Set.of("c1", "missing"))).willReturn(Map.of("c1", category));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("expand", "category")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(products.get(0).getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].categoryId").value("c1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].category.name").value("category"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].category.id").value("c1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].category").isEmpty());
+        Mockito.verify(categoryService, Mockito.times(1)).findAllById(ArgumentMatchers.anyCollection());
+        Mockito.verify(categoryService, Mockito.never()).findById(ArgumentMatchers.anyString());
+    }
+
+    @Test
+    void shouldReadCategoryIdForExpansionEvenWhenNotSelected() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        Category category = new Category(product.getCategoryId(), "category", "description");
+        // given: 数据库projection中要带上categoryId, 响应中仍然只有选中的字段
+        BDDMockito.given(productService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.argThat(fields -> fields.getFields().containsAll(List.of("id", "name", "categoryId"))),
+                        ArgumentMatchers.isNull(), ArgumentMatchers.anyInt()))
+                .willReturn(new CursorPage<>(List.of(product), null));
+        BDDMockito.given(categoryService.findAllById(Set.of(product.getCategoryId()))).willReturn(Map.of(category.getId(), category));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("fields", "name")
+                                .param("expand", "category")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value(product.getName()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].categoryId").doesNotExist())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].category.id").value(category.getId()));
+    }
+
+    @Test
+    void shouldRejectUnknownExpand() throws Exception {
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL)
+                                .param("expand", "supplier")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Unknown expand: supplier"));
+    }
+
+    @Test
+    void shouldEmbedCategoryAndIncludeItsVersionInETag() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        product.setVersion(2L);
+        Category category = new Category(product.getCategoryId(), "category", "description");
+        category.setVersion(5L);
+        // given
+        BDDMockito.given(productService.findById(product.getId())).willReturn(product);
+        BDDMockito.given(categoryService.findById(product.getCategoryId())).willReturn(category);
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/" + product.getId())
+                                .param("expand", "category")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"" + product.getId() + "-2-c5\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value(product.getName()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.category.name").value("category"));
+    }
+
+    @Test
+    void shouldExportProductsAsNdjson() throws Exception {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        // given
+        BDDMockito.given(productService.streamAll()).willReturn(expectedProducts.stream());
+        // StreamingResponseBody是异步写出的, 先确认异步已开始, 再用asyncDispatch拿到最终响应
+        MvcResult asyncResult = mockMvc.perform(MockMvcRequestBuilders.get(API_URL + "/export"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult))
+                .andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+        String expectedBody = expectedProducts.stream()
+                .map(product -> {
+                    try {
+                        return objectMapper.writeValueAsString(product) + "\n";
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .collect(Collectors.joining());
+        Assertions.assertThat(mvcResult.getResponse().getContentAsString()).isEqualTo(expectedBody);
+    }
+
     @Test
     void shouldReturnProductWhenValidId() throws Exception {
         // mock
@@ -73,6 +290,215 @@ class ProductControllerTest extends GlobalSpringContext {
                 .andExpect(ResponseBodyMatchers.responseBody().containsObjectAsJson(product, Product.class));
     }
 
+    @Test
+    void shouldReturnSelectedFieldsOfProduct() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        // given
+        BDDMockito.given(productService.findById(ArgumentMatchers.anyString())).willReturn(product);
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", "123456")
+                                .param("fields", "name")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("{\"id\":\"" + product.getId() + "\",\"name\":\"" + product.getName() + "\"}", true));
+    }
+
+    @Test
+    void shouldCountErrorsByCode() throws Exception {
+        // given
+        BDDMockito.given(productService.findById(ArgumentMatchers.anyString())).willReturn(null);
+        double before = meterRegistry.counter("api.errors", "code", "INVALID_REQUEST", "status", "400").count();
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", "123456")
+                                .contentType(MediaType.APPLICATION_JSON)
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        Assertions.assertThat(meterRegistry.counter("api.errors", "code", "INVALID_REQUEST", "status", "400").count())
+                .isEqualTo(before + 1);
+    }
+
+    @Test
+    void shouldNegotiateSmileAndCbor() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        ProductRequest productRequest = populateProductRequest();
+        Product savedProduct = populateProductFromProductRequest(productRequest);
+        // given
+        BDDMockito.given(productService.findById(product.getId())).willReturn(product);
+        BDDMockito.given(productService.save(productRequest)).willReturn(savedProduct);
+        // assertion: 响应按Accept返回Smile, 内容与JSON版本相同
+        MvcResult smileResult = mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", product.getId())
+                                .accept("application/x-jackson-smile")
+                ).andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-jackson-smile"))
+                .andReturn();
+        Assertions.assertThat(ObjectMapperConfig.configure(new SmileMapper()).readValue(smileResult.getResponse().getContentAsByteArray(), Product.class))
+                .isEqualTo(product);
+        // 请求体按Content-Type读取CBOR
+        ObjectMapper cborMapper = ObjectMapperConfig.configure(new CBORMapper());
+        MvcResult cborResult = mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL)
+                                .contentType(MediaType.APPLICATION_CBOR)
+                                .accept(MediaType.APPLICATION_CBOR)
+                                .content(cborMapper.writeValueAsBytes(productRequest))
+                ).andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn();
+        Assertions.assertThat(cborMapper.readValue(cborResult.getResponse().getContentAsByteArray(), Product.class))
+                .isEqualTo(savedProduct);
+    }
+
+    @Test
+    void shouldReturnETagAndLastModifiedOfProduct() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        product.setVersion(3L);
+        product.setLastModifiedDate(Instant.parse("2024-01-01T00:00:00Z"));
+        // given
+        BDDMockito.given(productService.findById(product.getId())).willReturn(product);
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", product.getId())
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"" + product.getId() + "-3\""))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LAST_MODIFIED, "Mon, 01 Jan 2024 00:00:00 GMT"));
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenProductETagMatches() throws Exception {
+        // mock
+        Product product = populateRandomProduct();
+        product.setVersion(3L);
+        // given
+        BDDMockito.given(productService.findById(product.getId())).willReturn(product);
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", product.getId())
+                                .header(HttpHeaders.IF_NONE_MATCH, "\"" + product.getId() + "-3\"")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        // 只返回部分字段时是另一个表示, 同一个ETag不能匹配
+        mockMvc.perform(
+                        MockMvcRequestBuilders.get(API_URL + "/{id}", product.getId())
+                                .param("fields", "name")
+                                .header(HttpHeaders.IF_NONE_MATCH, "\"" + product.getId() + "-3\"")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    void shouldUpdateProductWithIfMatchAndReturnNewETag() throws Exception {
+        // mock
+        ProductRequest productRequest = populateProductRequest();
+        Product updated = populateProductFromProductRequest(productRequest);
+        updated.setVersion(4L);
+        // given
+        BDDMockito.given(productService.update(updated.getId(), productRequest, 3L)).willReturn(updated);
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.put(API_URL + "/{id}", updated.getId())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header(HttpHeaders.IF_MATCH, "\"" + updated.getId() + "-3\"")
+                                .content(objectMapper.writeValueAsString(productRequest))
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"" + updated.getId() + "-4\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(4));
+    }
+
+    @Test
+    void shouldReturnConflictWhenVersionIsStale() throws Exception {
+        // given
+        BDDMockito.given(productService.patch(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(ProductPatch.class), ArgumentMatchers.eq(3L)))
+                .willThrow(new OptimisticLockingFailureException("Product p1 was modified concurrently, expected version 3"));
+        // assertion
+        MvcResult mvcResult = mockMvc.perform(
+                        MockMvcRequestBuilders.patch(API_URL + "/{id}", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header(HttpHeaders.IF_MATCH, "\"p1-3\"")
+                                .content("{\"stockDelta\": -1}")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isConflict())
+                .andReturn();
+        ApiError actualApiError = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ApiError.class);
+        ApiErrorAssert.assertThat(actualApiError)
+                .hasStatusCode("CONFLICT")
+                .hasPath("uri=" + API_URL + "/p1");
+    }
+
+    @Test
+    void shouldReserveStock() throws Exception {
+        // given
+        BDDMockito.given(productService.reserve("p1", 2)).willReturn(new ReservationResult("p1", 2, 8));
+        // assertion
+        mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/{id}/reserve", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(new ReservationRequest(2)))
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.remainingStock").value(8));
+    }
+
+    @Test
+    void shouldReturnConflictWhenStockIsInsufficient() throws Exception {
+        // given
+        BDDMockito.given(productService.reserve("p1", 20)).willThrow(new InsufficientStockException("Insufficient stock for product p1, requested 20"));
+        // assertion
+        MvcResult mvcResult = mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/{id}/reserve", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(new ReservationRequest(20)))
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isConflict())
+                .andReturn();
+        ApiError actualApiError = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ApiError.class);
+        ApiErrorAssert.assertThat(actualApiError)
+                .hasStatusCode("INSUFFICIENT_STOCK")
+                .hasMessage("Insufficient stock for product p1, requested 20");
+    }
+
+    @Test
+    void shouldRejectReservationQuantityAboveLimit() throws Exception {
+        mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/{id}/reserve", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(new ReservationRequest(ReservationRequest.MAX_QUANTITY + 1)))
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        BDDMockito.verify(productService, Mockito.never()).reserve(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    void shouldRejectPatchWithStockAndStockDelta() throws Exception {
+        mockMvc.perform(
+                        MockMvcRequestBuilders.patch(API_URL + "/{id}", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"stock\": 5, \"stockDelta\": -1}")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(ResponseBodyMatchers.responseBody().containsError("stockChangeUnambiguous", "stock and stockDelta must not be used together"));
+        BDDMockito.verify(productService, Mockito.never()).patch(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldRejectMalformedIfMatch() throws Exception {
+        mockMvc.perform(
+                        MockMvcRequestBuilders.patch(API_URL + "/{id}", "p1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .header(HttpHeaders.IF_MATCH, "\"other-3\"")
+                                .content("{\"stockDelta\": -1}")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        BDDMockito.verify(productService, Mockito.never()).patch(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
     @Test
     void shouldThrowAnExceptionWhenInvalidProductId() throws Exception {
         // given
@@ -137,6 +563,72 @@ class ProductControllerTest extends GlobalSpringContext {
     }
 
 
+    @Test
+    void shouldImportProductsFromJsonArray() throws Exception {
+        // mock
+        List<ProductRequest> productRequests = Arrays.asList(populateProductRequest(), populateProductRequest());
+        BatchResult expectedResult = new BatchResult(2, 0, Arrays.asList(
+                new BatchItemResult(0, BatchItemResult.CREATED, UUID.randomUUID().toString(), null),
+                new BatchItemResult(1, BatchItemResult.CREATED, UUID.randomUUID().toString(), null)
+        ));
+        // given: 把收到的iterator读完, 确认controller逐条传入了请求中的所有数据
+        BDDMockito.given(productService.saveAll(ArgumentMatchers.any())).willAnswer(invocation -> {
+            Iterator<ProductRequest> iterator = invocation.getArgument(0);
+            Assertions.assertThat(iterator).toIterable().usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(productRequests);
+            return expectedResult;
+        });
+        // assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(productRequests))
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(ResponseBodyMatchers.responseBody().containsObjectAsJson(expectedResult, BatchResult.class));
+    }
+
+    @Test
+    void shouldImportProductsFromNdjson() throws Exception {
+        // mock
+        List<ProductRequest> productRequests = Arrays.asList(populateProductRequest(), populateProductRequest(), populateProductRequest());
+        StringBuilder body = new StringBuilder();
+        for (ProductRequest productRequest : productRequests) {
+            body.append(objectMapper.writeValueAsString(productRequest)).append('\n');
+        }
+        // given
+        BDDMockito.given(productService.saveAll(ArgumentMatchers.any())).willAnswer(invocation -> {
+            Iterator<ProductRequest> iterator = invocation.getArgument(0);
+            Assertions.assertThat(iterator).toIterable().hasSize(productRequests.size());
+            return new BatchResult(productRequests.size(), 0, List.of());
+        });
+        // assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/batch")
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(body.toString())
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.created").value(productRequests.size()));
+    }
+
+    @Test
+    void shouldThrowAnExceptionWhenMalformedBatchBody() throws Exception {
+        // given
+        BDDMockito.given(productService.saveAll(ArgumentMatchers.any())).willAnswer(invocation -> {
+            Iterator<ProductRequest> iterator = invocation.getArgument(0);
+            iterator.forEachRemaining(productRequest -> { });
+            return new BatchResult();
+        });
+        // assert
+        mockMvc.perform(
+                        MockMvcRequestBuilders.post(API_URL + "/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[{\"name\": \"broken\", ")
+                ).andDo(MockMvcResultHandlers.print())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.statusCode").value("INVALID_REQUEST"));
+    }
+
     private List<Product> populateRandomProducts() {
         return Arrays.asList(
                 Product.builder().id(UUID.randomUUID().toString()).name(faker.commerce().productName()).description(faker.funnyName().name()).price(new BigDecimal(faker.commerce().price())).categoryId(UUID.randomUUID().toString()).build(),
@@ -0,0 +1,348 @@
+package com.moh.yehia.testing.controller;
+
+import com.github.javafaker.Faker;
+import com.moh.yehia.testing.asserts.ApiErrorAssert;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.model.ApiError;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CursorPage;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.model.ReservationRequest;
+import com.moh.yehia.testing.model.ValidationError;
+import com.moh.yehia.testing.service.design.ReactiveCategoryService;
+import com.moh.yehia.testing.service.design.ReactiveProductService;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.FieldSelection;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// 响应式版本的接口要与ProductController返回完全相同的响应和错误格式
+@WebFluxTest(controllers = ReactiveProductController.class)
+@ActiveProfiles("test")
+class ReactiveProductControllerTest {
+
+    private static Faker faker;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveProductService reactiveProductService;
+
+    @MockBean
+    private ReactiveCategoryService reactiveCategoryService;
+
+    private final String API_URL = "/api/v1/products";
+
+    @BeforeAll
+    static void initializeFaker() {
+        faker = new Faker(Locale.ENGLISH);
+    }
+
+    @Test
+    void shouldReturnProductPageWithNextCursor() {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        String nextCursor = CursorPaging.encode(expectedProducts.get(expectedProducts.size() - 1).getId());
+        // given
+        BDDMockito.given(reactiveProductService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.eq(FieldSelection.all()), ArgumentMatchers.isNull(), ArgumentMatchers.eq(3)))
+                .willReturn(Mono.just(new CursorPage<>(expectedProducts, nextCursor)));
+        // assertion
+        webTestClient.get().uri(API_URL + "?limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(CursorPaging.NEXT_CURSOR_HEADER, nextCursor)
+                .expectBodyList(Product.class).isEqualTo(expectedProducts);
+    }
+
+    @Test
+    void shouldEmbedCategoriesWithSingleLookupPerPage() {
+        // mock
+        List<Product> products = populateRandomProducts();
+        Category category = new Category(products.get(0).getCategoryId(), "category", "description");
+        // given
+        BDDMockito.given(reactiveProductService.findPage(ArgumentMatchers.any(ProductFilter.class), ArgumentMatchers.eq(FieldSelection.all()), ArgumentMatchers.isNull(), ArgumentMatchers.anyInt()))
+                .willReturn(Mono.just(new CursorPage<>(products, null)));
+        BDDMockito.given(reactiveCategoryService.findAllById(ArgumentMatchers.anyCollection())).willReturn(Mono.just(Map.of(category.getId(), category)));
+        // assertion
+        webTestClient.get().uri(API_URL + "?expand=category")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo(products.get(0).getId())
+                .jsonPath("$[0].category.name").isEqualTo("category")
+                .jsonPath("$[1].category").isEmpty();
+        Mockito.verify(reactiveCategoryService).findAllById(Set.copyOf(products.stream().map(Product::getCategoryId).toList()));
+    }
+
+    @Test
+    void shouldReturnOnlySelectedFields() {
+        // mock
+        Product product = populateRandomProduct();
+        // given
+        BDDMockito.given(reactiveProductService.findById(product.getId())).willReturn(Mono.just(product));
+        // assertion
+        webTestClient.get().uri(API_URL + "/{id}?fields=name", product.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(product.getId())
+                .jsonPath("$.name").isEqualTo(product.getName())
+                .jsonPath("$.description").doesNotExist();
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenProductETagMatches() {
+        // mock
+        Product product = populateRandomProduct();
+        product.setVersion(3L);
+        // given
+        BDDMockito.given(reactiveProductService.findById(product.getId())).willReturn(Mono.just(product));
+        // assertion
+        webTestClient.get().uri(API_URL + "/{id}", product.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + product.getId() + "-3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + product.getId() + "-3\"")
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void shouldStreamProductsAsNdjson() {
+        // mock
+        List<Product> expectedProducts = populateRandomProducts();
+        // given
+        BDDMockito.given(reactiveProductService.streamAll()).willReturn(Flux.fromIterable(expectedProducts));
+        // assertion
+        List<Product> actualProducts = webTestClient.get().uri(API_URL + "/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Product.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        Assertions.assertThat(actualProducts).isEqualTo(expectedProducts);
+    }
+
+    @Test
+    void shouldReturnApiErrorWhenInvalidProductId() {
+        // given
+        BDDMockito.given(reactiveProductService.findById(ArgumentMatchers.anyString())).willReturn(Mono.empty());
+        // assertion
+        ApiError actualApiError = webTestClient.get().uri(API_URL + "/{id}", "123456")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(ApiError.class)
+                .returnResult()
+                .getResponseBody();
+        ApiErrorAssert.assertThat(actualApiError)
+                .hasStatusCode("INVALID_REQUEST")
+                .hasMessage("Product not found with this id: 123456")
+                .hasPath("uri=" + API_URL + "/123456");
+    }
+
+    @Test
+    void shouldSaveProductWhenValidData() {
+        // mock
+        ProductRequest productRequest = populateProductRequest();
+        Product expectedProduct = populateProductFromProductRequest(productRequest);
+        // given
+        BDDMockito.given(reactiveProductService.save(ArgumentMatchers.any(ProductRequest.class))).willReturn(Mono.just(expectedProduct));
+        // assertion
+        webTestClient.post().uri(API_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productRequest)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Product.class).isEqualTo(expectedProduct);
+    }
+
+    @Test
+    void shouldReturnValidationErrorWhenInvalidData() {
+        // mock
+        ProductRequest productRequest = new ProductRequest(null, faker.funnyName().name(), null, faker.commerce().department(), 0);
+        // assertion
+        ValidationError actualValidationError = webTestClient.post().uri(API_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productRequest)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(ValidationError.class)
+                .returnResult()
+                .getResponseBody();
+        Assertions.assertThat(actualValidationError).isNotNull();
+        Assertions.assertThat(actualValidationError.getPath()).isEqualTo("uri=" + API_URL);
+        Assertions.assertThat(actualValidationError.getErrors()).containsOnlyKeys("name", "price", "stock");
+        BDDMockito.verify(reactiveProductService, Mockito.never()).save(ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldUpdateProductWithIfMatchAndReturnNewETag() {
+        // mock
+        ProductRequest productRequest = populateProductRequest();
+        Product updated = populateProductFromProductRequest(productRequest);
+        updated.setVersion(4L);
+        // given
+        BDDMockito.given(reactiveProductService.update(updated.getId(), productRequest, 3L)).willReturn(Mono.just(updated));
+        // assertion
+        webTestClient.put().uri(API_URL + "/{id}", updated.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"" + updated.getId() + "-3\"")
+                .bodyValue(productRequest)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + updated.getId() + "-4\"")
+                .expectBody().jsonPath("$.version").isEqualTo(4);
+    }
+
+    @Test
+    void shouldReturnConflictWhenVersionIsStale() {
+        // given
+        BDDMockito.given(reactiveProductService.patch(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(ProductPatch.class), ArgumentMatchers.eq(3L)))
+                .willReturn(Mono.error(new OptimisticLockingFailureException("Product p1 was modified concurrently, expected version 3")));
+        // assertion
+        ApiError actualApiError = webTestClient.patch().uri(API_URL + "/{id}", "p1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"p1-3\"")
+                .bodyValue("{\"stockDelta\": -1}")
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(ApiError.class)
+                .returnResult()
+                .getResponseBody();
+        ApiErrorAssert.assertThat(actualApiError)
+                .hasStatusCode("CONFLICT")
+                .hasPath("uri=" + API_URL + "/p1");
+    }
+
+    @Test
+    void shouldRejectPatchWithStockAndStockDelta() {
+        // assertion
+        ValidationError actualValidationError = webTestClient.patch().uri(API_URL + "/{id}", "p1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"stock\": 5, \"stockDelta\": -1}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(ValidationError.class)
+                .returnResult()
+                .getResponseBody();
+        Assertions.assertThat(actualValidationError).isNotNull();
+        Assertions.assertThat(actualValidationError.getErrors()).containsOnlyKeys("stockChangeUnambiguous");
+        BDDMockito.verify(reactiveProductService, Mockito.never()).patch(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldReturnConflictWhenStockIsInsufficient() {
+        // given
+        BDDMockito.given(reactiveProductService.reserve("p1", 20))
+                .willReturn(Mono.error(new InsufficientStockException("Insufficient stock for product p1, requested 20")));
+        // assertion
+        ApiError actualApiError = webTestClient.post().uri(API_URL + "/{id}/reserve", "p1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new ReservationRequest(20))
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(ApiError.class)
+                .returnResult()
+                .getResponseBody();
+        ApiErrorAssert.assertThat(actualApiError)
+                .hasStatusCode("INSUFFICIENT_STOCK")
+                .hasMessage("Insufficient stock for product p1, requested 20");
+    }
+
+    @Test
+    void shouldImportProductsFromNdjson() {
+        // mock
+        List<ProductRequest> productRequests = Arrays.asList(populateProductRequest(), populateProductRequest(), populateProductRequest());
+        // given
+        BDDMockito.given(reactiveProductService.saveAll(ArgumentMatchers.any())).willAnswer(invocation -> {
+            Flux<ProductRequest> requests = invocation.getArgument(0);
+            return requests.collectList().map(decoded -> new BatchResult(decoded.size(), 0, List.of()));
+        });
+        // assertion
+        webTestClient.post().uri(API_URL + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(Flux.fromIterable(productRequests), ProductRequest.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.created").isEqualTo(productRequests.size());
+    }
+
+    @Test
+    void shouldReturnApiErrorWhenMalformedBatchBody() {
+        // given
+        BDDMockito.given(reactiveProductService.saveAll(ArgumentMatchers.any())).willAnswer(invocation -> {
+            Flux<ProductRequest> requests = invocation.getArgument(0);
+            return requests.then(Mono.just(new BatchResult()));
+        });
+        // assertion
+        ApiError actualApiError = webTestClient.post().uri(API_URL + "/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"name\": \"broken\", ")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(ApiError.class)
+                .returnResult()
+                .getResponseBody();
+        ApiErrorAssert.assertThat(actualApiError).hasStatusCode("INVALID_REQUEST");
+        Assertions.assertThat(actualApiError.getMessage()).startsWith("Malformed batch request body: ");
+    }
+
+    private List<Product> populateRandomProducts() {
+        return Arrays.asList(populateRandomProduct(), populateRandomProduct(), populateRandomProduct());
+    }
+
+    private Product populateRandomProduct() {
+        return Product.builder()
+                .id(UUID.randomUUID().toString())
+                .name(faker.commerce().productName())
+                .description(faker.funnyName().name())
+                .price(new BigDecimal(faker.commerce().price()))
+                .stock(faker.number().numberBetween(1, 100))
+                .categoryId(UUID.randomUUID().toString())
+                .build();
+    }
+
+    private ProductRequest populateProductRequest() {
+        return new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal(faker.commerce().price()), faker.commerce().department(), faker.number().numberBetween(1, 100));
+    }
+
+    private Product populateProductFromProductRequest(ProductRequest productRequest) {
+        return Product.builder()
+                .id(UUID.randomUUID().toString())
+                .name(productRequest.getName())
+                .description(productRequest.getDescription())
+                .categoryId(productRequest.getCategoryId())
+                .price(productRequest.getPrice())
+                .stock(productRequest.getStock())
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.moh.yehia.testing.event;
+
+import com.moh.yehia.testing.model.Product;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.assertj.core.api.Assertions;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.util.ErrorHandler;
+
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class ChangeStreamSubscriptionsTest {
+    @Mock
+    private MessageListenerContainer container;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private Subscription subscription;
+
+    private final ArgumentCaptor<ChangeStreamRequest<Document>> requests = ArgumentCaptor.forClass(ChangeStreamRequest.class);
+
+    private final ArgumentCaptor<ErrorHandler> errorHandlers = ArgumentCaptor.forClass(ErrorHandler.class);
+
+    private ChangeStreamSubscriptions subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.given(mongoTemplate.getCollectionName(Product.class)).willReturn("product");
+        BDDMockito.given(container.register(requests.capture(), ArgumentMatchers.eq(Document.class), errorHandlers.capture())).willReturn(subscription);
+        subscriptions = new ChangeStreamSubscriptions(container, mongoTemplate, new ChangeStreamEventBridge(applicationEventPublisher), List.of(Product.class));
+    }
+
+    @Test
+    void shouldResubscribeFromLastResumeTokenAfterFailure() {
+        // given: 收到一条变更后订阅出错结束
+        BsonDocument resumeToken = new BsonDocument("_data", new BsonString("token-1"));
+        @SuppressWarnings("unchecked")
+        MessageListener<ChangeStreamDocument<Document>, Object> listener = (MessageListener<ChangeStreamDocument<Document>, Object>) requests.getValue().getMessageListener();
+        listener.onMessage(message(resumeToken));
+        errorHandlers.getValue().handleError(new DataAccessResourceFailureException("connection reset"));
+        Assertions.assertThat(subscriptions.health().getStatus()).isEqualTo(Status.DOWN);
+        BDDMockito.given(container.isRunning()).willReturn(true);
+        // when
+        subscriptions.resubscribeFailed();
+        // then
+        Mockito.verify(container).remove(subscription);
+        Assertions.assertThat(requests.getAllValues()).hasSize(2);
+        Assertions.assertThat(requests.getValue().getRequestOptions().getChangeStreamOptions().getResumeToken()).contains(resumeToken);
+        Assertions.assertThat(subscriptions.health().getStatus()).isEqualTo(Status.UP);
+        // 中断期间的变更可能漏掉了, 出错时清空缓存
+        Mockito.verify(applicationEventPublisher).publishEvent(EntityChangeEvent.reset(Product.class));
+    }
+
+    @Test
+    void shouldOnlyResetCachesWhenListenerFailsButSubscriptionIsStillRunning() {
+        // given
+        BDDMockito.given(subscription.isActive()).willReturn(true);
+        // when
+        errorHandlers.getValue().handleError(new IllegalStateException("listener failed"));
+        subscriptions.resubscribeFailed();
+        // then
+        Assertions.assertThat(subscriptions.health().getStatus()).isEqualTo(Status.UP);
+        Assertions.assertThat(requests.getAllValues()).hasSize(1);
+        Mockito.verify(applicationEventPublisher).publishEvent(EntityChangeEvent.reset(Product.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message<ChangeStreamDocument<Document>, Object> message(BsonDocument resumeToken) {
+        ChangeStreamDocument<Document> change = new ChangeStreamDocument<>(OperationType.UPDATE.getValue(), resumeToken, null, null, null, null,
+                new BsonDocument("_id", new BsonString("p1")), null, null, null, null, null, null);
+        Message<ChangeStreamDocument<Document>, Object> message = Mockito.mock(Message.class);
+        BDDMockito.given(message.getRaw()).willReturn(change);
+        return message;
+    }
+}
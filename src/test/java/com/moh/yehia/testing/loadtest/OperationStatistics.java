@@ -0,0 +1,64 @@
+package com.moh.yehia.testing.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 压测中一种请求(如"查询商品列表")的统计: 耗时分布用HdrHistogram记录(纳秒精度, 3位有效数字), 错误数单独计数
+// Recorder和LongAdder都支持多个压测线程同时写入
+class OperationStatistics {
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Recorder recorder = new Recorder(MAX_TRACKABLE_NANOS, 3);
+    private final LongAdder errors = new LongAdder();
+    private final Histogram total = new Histogram(MAX_TRACKABLE_NANOS, 3);
+
+    OperationStatistics(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // 失败的请求也记录耗时, 否则超时之类的慢失败会让延迟分布看起来更好
+    void record(long elapsedNanos, boolean success) {
+        recorder.recordValue(Math.min(elapsedNanos, MAX_TRACKABLE_NANOS));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    // 丢弃预热阶段的数据
+    void reset() {
+        recorder.reset();
+        errors.reset();
+    }
+
+    Map<String, Object> report(double elapsedSeconds) {
+        total.add(recorder.getIntervalHistogram());
+        long count = total.getTotalCount();
+        long errorCount = errors.sum();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("operation", name);
+        report.put("requests", count);
+        report.put("errors", errorCount);
+        report.put("errorRate", count == 0 ? 0 : (double) errorCount / count);
+        report.put("throughputPerSecond", count / elapsedSeconds);
+        report.put("p50Ms", millis(total.getValueAtPercentile(50)));
+        report.put("p90Ms", millis(total.getValueAtPercentile(90)));
+        report.put("p99Ms", millis(total.getValueAtPercentile(99)));
+        report.put("p999Ms", millis(total.getValueAtPercentile(99.9)));
+        report.put("maxMs", millis(total.getMaxValue()));
+        return report;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,178 @@
+package com.moh.yehia.testing.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.repository.BaseMongoContainer;
+import com.moh.yehia.testing.repository.CategoryRepository;
+import com.moh.yehia.testing.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 端到端压测: 在9090端口启动完整的应用(连接testcontainers启动的MongoDB), 用JDK的HttpClient对真实的HTTP接口发请求
+// 闭环模型: concurrency个线程各自循环"发请求 -> 等响应 -> 再发下一个", 按write-ratio的比例混合读写请求
+// 只在loadtest profile中由failsafe运行, 单元测试(mvn test)不会运行
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@Slf4j
+class ProductLoadIT extends BaseMongoContainer {
+    private static final String BASE_URL = "http://localhost:9090/spring-boot-testing/api/v1";
+    private static final int CATEGORY_COUNT = 20;
+    private static final int PRODUCT_COUNT = 2_000;
+
+    private final Duration warmup = duration("loadtest.warmup", "5s");
+    private final Duration duration = duration("loadtest.duration", "30s");
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+    private final double writeRatio = Double.parseDouble(System.getProperty("loadtest.write-ratio", "0.1"));
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+    private final Path reportPath = Path.of(System.getProperty("loadtest.report", "target/loadtest-report.json"));
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final List<String> categoryIds = new ArrayList<>();
+    private final List<String> productIds = new ArrayList<>();
+
+    private final OperationStatistics listProducts = new OperationStatistics("GET /products");
+    private final OperationStatistics findProduct = new OperationStatistics("GET /products/{id}");
+    private final OperationStatistics listCategories = new OperationStatistics("GET /categories");
+    private final OperationStatistics saveProduct = new OperationStatistics("POST /products");
+
+    @BeforeEach
+    void seed() {
+        productRepository.deleteAll();
+        categoryRepository.deleteAll();
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            categories.add(new Category(UUID.randomUUID().toString(), "category " + i, "load test category " + i));
+        }
+        categoryRepository.saveAll(categories).forEach(category -> categoryIds.add(category.getId()));
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products.add(new Product(UUID.randomUUID().toString(), "product " + i, "load test product " + i,
+                    BigDecimal.valueOf(i % 500 + 1), i % 50, categoryIds.get(i % CATEGORY_COUNT)));
+        }
+        productRepository.saveAll(products).forEach(product -> productIds.add(product.getId()));
+    }
+
+    @Test
+    void mixedReadWriteWorkload() throws Exception {
+        List<OperationStatistics> operations = List.of(listProducts, findProduct, listCategories, saveProduct);
+        log.info("ProductLoadIT :: warmup {} then measure {} with {} workers, write ratio {}", warmup, duration, concurrency, writeRatio);
+        run(warmup);
+        operations.forEach(OperationStatistics::reset);
+        long start = System.nanoTime();
+        run(duration);
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", elapsedSeconds);
+        report.put("concurrency", concurrency);
+        report.put("writeRatio", writeRatio);
+        List<Map<String, Object>> operationReports = operations.stream().map(operation -> operation.report(elapsedSeconds)).toList();
+        report.put("operations", operationReports);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), report);
+        operationReports.forEach(operationReport -> log.info("ProductLoadIT :: {}", operationReport));
+        log.info("ProductLoadIT :: report written to {}", reportPath.toAbsolutePath());
+
+        Assertions.assertThat(operationReports).allSatisfy(operationReport ->
+                Assertions.assertThat((double) operationReport.get("errorRate")).isLessThanOrEqualTo(maxErrorRate));
+    }
+
+    private void run(Duration runDuration) throws InterruptedException {
+        long deadline = System.nanoTime() + runDuration.toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    execute();
+                }
+            });
+        }
+        workers.shutdown();
+        Assertions.assertThat(workers.awaitTermination(runDuration.toSeconds() + 60, TimeUnit.SECONDS)).isTrue();
+    }
+
+    // 写请求按write-ratio的比例, 其余在三种读请求中平均分配
+    private void execute() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < writeRatio) {
+            ProductRequest productRequest = new ProductRequest("product " + random.nextInt(), "created by load test",
+                    BigDecimal.valueOf(random.nextInt(1, 500)), categoryIds.get(random.nextInt(categoryIds.size())), random.nextInt(1, 100));
+            send(saveProduct, post("/products", productRequest));
+            return;
+        }
+        switch (random.nextInt(3)) {
+            case 0 -> send(listProducts, get("/products?limit=20&categoryId=" + categoryIds.get(random.nextInt(categoryIds.size()))));
+            case 1 -> send(findProduct, get("/products/" + productIds.get(random.nextInt(productIds.size()))));
+            default -> send(listCategories, get("/categories"));
+        }
+    }
+
+    private void send(OperationStatistics statistics, HttpRequest request) {
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            success = response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            success = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        statistics.record(System.nanoTime() - start, success);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(BASE_URL + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(BASE_URL + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,70 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.model.Product;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@DataMongoTest
+class CategoryStatsRepositoryTest extends BaseMongoContainer {
+    @Autowired
+    private CategoryStatsRepository categoryStatsRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void clearUp() {
+        productRepository.deleteAll();
+        categoryStatsRepository.deleteAll();
+        productRepository.saveAll(List.of(
+                new Product(null, "p1", "d1", new BigDecimal("10.50"), 2, "c1"),
+                new Product(null, "p2", "d2", new BigDecimal("9.5"), 4, "c1"),
+                new Product(null, "p3", "d3", new BigDecimal("100"), 1, "c2")
+        ));
+    }
+
+    @Test
+    void shouldAggregateStatsPerCategory() {
+        List<CategoryStats> stats = categoryStatsRepository.aggregate(null);
+
+        Assertions.assertThat(stats).extracting(CategoryStats::getCategoryId).containsExactly("c1", "c2");
+        Assertions.assertThat(stats.get(0).getProductCount()).isEqualTo(2);
+        Assertions.assertThat(stats.get(0).getTotalStock()).isEqualTo(6);
+        Assertions.assertThat(stats.get(0).getStockValue()).isEqualByComparingTo("59.00");
+        Assertions.assertThat(stats.get(1).getStockValue()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    void shouldAggregateSingleCategory() {
+        Assertions.assertThat(categoryStatsRepository.aggregate("c2"))
+                .singleElement()
+                .extracting(CategoryStats::getProductCount)
+                .isEqualTo(1L);
+        Assertions.assertThat(categoryStatsRepository.aggregate("unknown")).isEmpty();
+    }
+
+    @Test
+    void shouldRebuildSummaryAndApplyIncrements() {
+        categoryStatsRepository.rebuild();
+        categoryStatsRepository.increment("c1", 1, 3, new BigDecimal("4.50"));
+        categoryStatsRepository.increment("c3", 1, 1, new BigDecimal("2"));
+
+        CategoryStats c1 = categoryStatsRepository.findById("c1").orElseThrow();
+        Assertions.assertThat(c1.getProductCount()).isEqualTo(3);
+        Assertions.assertThat(c1.getTotalStock()).isEqualTo(9);
+        Assertions.assertThat(c1.getStockValue()).isEqualByComparingTo("63.50");
+        Assertions.assertThat(categoryStatsRepository.findById("c3")).isPresent();
+
+        // 重建后以聚合结果为准, 增量写入的偏差被修正
+        categoryStatsRepository.rebuild();
+        Assertions.assertThat(categoryStatsRepository.findById("c1").orElseThrow().getProductCount()).isEqualTo(2);
+        Assertions.assertThat(categoryStatsRepository.findById("c3")).isEmpty();
+    }
+}
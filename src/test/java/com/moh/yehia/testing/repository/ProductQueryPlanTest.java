@@ -0,0 +1,125 @@
+package com.moh.yehia.testing.repository;
+
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.mongodb.ExplainVerbosity;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// 检查商品列表支持的每一种过滤条件都走预期的索引, 并且扫描的索引项数量与一页的大小和满足条件的商品数相当, 而不是与商品总数相当
+// 所有查询都按_id排序, 只检查有没有IXSCAN是不够的(_id_索引总能满足排序, 但要扫描整个索引才能凑够一页); 新增过滤条件时要在filters()中加上对应的用例
+@DataMongoTest
+class ProductQueryPlanTest extends BaseMongoContainer {
+    private static final int PRODUCT_COUNT = 1000;
+    private static final int PAGE_SIZE = 50;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final List<Product> products = new ArrayList<>();
+
+    // 数据是确定的, 每个条件的选择性固定: 每个分类100条, 价格0~99各10条, 80%有库存, 名称以Rare开头的只有20条(都在category-2中)
+    @BeforeEach
+    void setUp() {
+        productRepository.deleteAll();
+        products.clear();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            String name = (i % 50 == 2 ? "Rare widget " : "Common widget ") + i;
+            products.add(Product.builder().id(String.format("p%06d", i)).name(name).description(name)
+                    .price(new BigDecimal(i % 100)).stock(i % 5).categoryId("category-" + (i % 10)).build());
+        }
+        productRepository.saveAll(products);
+    }
+
+    // 期望的索引为null时不限定(条件组合时由查询优化器根据数据选择), 只检查扫描的索引项数量
+    // sortedByIndex: 索引中_id紧跟在等值条件之后, 结果顺序直接来自索引, 不能有内存中的SORT
+    static Stream<Arguments> filters() {
+        return Stream.of(
+                Arguments.of("category", new ProductFilter("category-1", null, null, null, null), Product.CATEGORY_FILTER_INDEX, true),
+                Arguments.of("price range", new ProductFilter(null, new BigDecimal("10"), new BigDecimal("11"), null, null), Product.PRICE_INDEX, false),
+                Arguments.of("category and price range", new ProductFilter("category-1", new BigDecimal("10"), null, null, null), Product.CATEGORY_FILTER_INDEX, true),
+                Arguments.of("in stock", new ProductFilter(null, null, null, true, null), "_id_", true),
+                Arguments.of("name prefix", new ProductFilter(null, null, null, null, "Rare"), Product.NAME_INDEX, false),
+                Arguments.of("all filters", new ProductFilter("category-2", null, new BigDecimal("50"), true, "Rare"), null, false)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("filters")
+    void shouldUseIndexForSupportedFilter(String name, ProductFilter filter, String expectedIndex, boolean sortedByIndex) {
+        Document explain = explain(ProductQueries.page(filter, Set.of(), "", PAGE_SIZE));
+        List<Document> stages = new ArrayList<>();
+        collectStages(explain.get("queryPlanner", Document.class).get("winningPlan", Document.class), stages);
+        Assertions.assertThat(stages).extracting(stage -> stage.getString("stage"))
+                .contains("IXSCAN")
+                .doesNotContain("COLLSCAN");
+        if (sortedByIndex) {
+            Assertions.assertThat(stages).extracting(stage -> stage.getString("stage")).doesNotContain("SORT");
+        }
+        if (expectedIndex != null) {
+            Document indexScan = stages.stream().filter(stage -> "IXSCAN".equals(stage.getString("stage"))).findFirst().orElseThrow();
+            Assertions.assertThat(indexScan.getString("indexName")).isEqualTo(expectedIndex);
+        }
+        // 扫描整个索引(比如_id在过滤字段之前, 或者选错了索引)时扫描的索引项接近商品总数, 这里会失败
+        long matching = products.stream().filter(product -> matches(filter, product)).count();
+        int keysExamined = explain.get("executionStats", Document.class).getInteger("totalKeysExamined");
+        Assertions.assertThat(keysExamined).isLessThanOrEqualTo((int) matching + 2 * (PAGE_SIZE + 1));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("filters")
+    void shouldReturnOnlyMatchingProducts(String name, ProductFilter filter, String expectedIndex, boolean sortedByIndex) {
+        List<Product> page = productRepository.findPage(filter, Set.of(), "", 500).getContent();
+        Assertions.assertThat(page).isNotEmpty().allMatch(product -> matches(filter, product));
+        Assertions.assertThat(page).extracting(Product::getId).isSorted();
+    }
+
+    private static boolean matches(ProductFilter filter, Product product) {
+        return (filter.getCategoryId() == null || filter.getCategoryId().equals(product.getCategoryId()))
+                && (filter.getMinPrice() == null || product.getPrice().compareTo(filter.getMinPrice()) >= 0)
+                && (filter.getMaxPrice() == null || product.getPrice().compareTo(filter.getMaxPrice()) <= 0)
+                && (filter.getInStock() == null || filter.getInStock() == product.getStock() > 0)
+                && (filter.getNamePrefix() == null || product.getName().startsWith(filter.getNamePrefix()));
+    }
+
+    // 与MongoTemplate.find相同的方式把查询条件转换成数据库中的格式(字段名、BigDecimal等)再执行explain
+    private Document explain(Query query) {
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Document mappedQuery = queryMapper.getMappedObject(query.getQueryObject(),
+                mongoTemplate.getConverter().getMappingContext().getPersistentEntity(Product.class));
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .find(mappedQuery)
+                .sort(query.getSortObject())
+                .limit(query.getLimit())
+                .explain(ExplainVerbosity.EXECUTION_STATS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectStages(Document plan, List<Document> stages) {
+        stages.add(plan);
+        if (plan.containsKey("inputStage")) {
+            collectStages(plan.get("inputStage", Document.class), stages);
+        }
+        if (plan.containsKey("inputStages")) {
+            ((List<Document>) plan.get("inputStages")).forEach(inputStage -> collectStages(inputStage, stages));
+        }
+    }
+}
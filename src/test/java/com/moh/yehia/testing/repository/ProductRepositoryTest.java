@@ -2,17 +2,26 @@ package com.moh.yehia.testing.repository;
 
 import com.github.javafaker.Faker;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
 import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.bson.types.Decimal128;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
 
 @DataMongoTest
@@ -20,6 +29,9 @@ class ProductRepositoryTest extends BaseMongoContainer {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     private static Faker faker;
 
     @BeforeAll
@@ -71,6 +83,66 @@ class ProductRepositoryTest extends BaseMongoContainer {
                 .hasFieldOrProperty("stock");
     }
 
+    @Test
+    void shouldReturnNextSliceAfterGivenId() {
+        List<Product> products = productRepository.saveAll(populateRandomProducts());
+        List<String> sortedIds = products.stream().map(Product::getId).sorted().toList();
+
+        Slice<Product> firstSlice = productRepository.findByIdGreaterThan("", PageRequest.of(0, 2, Sort.by("id")));
+        Assertions.assertThat(firstSlice.getContent()).extracting(Product::getId).containsExactly(sortedIds.get(0), sortedIds.get(1));
+        Assertions.assertThat(firstSlice.hasNext()).isTrue();
+
+        Slice<Product> lastSlice = productRepository.findByIdGreaterThan(sortedIds.get(1), PageRequest.of(0, 2, Sort.by("id")));
+        Assertions.assertThat(lastSlice.getContent()).extracting(Product::getId).containsExactly(sortedIds.get(2));
+        Assertions.assertThat(lastSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    void shouldUpdateInPlaceOnlyWhenVersionMatches() {
+        Product product = Product.builder().id(UUID.randomUUID().toString()).name(faker.commerce().productName()).description(faker.funnyName().name()).price(new BigDecimal(faker.commerce().price())).stock(10).categoryId(UUID.randomUUID().toString()).build();
+        product = productRepository.save(product);
+        Assertions.assertThat(product.getVersion()).isZero();
+
+        Product updated = productRepository.update(product.getId(), new Update().inc("stock", -3), 0L, null);
+        Assertions.assertThat(updated).isNotNull();
+        Assertions.assertThat(updated.getStock()).isEqualTo(7);
+        Assertions.assertThat(updated.getVersion()).isEqualTo(1L);
+        Assertions.assertThat(updated.getLastModifiedDate()).isNotNull();
+        Assertions.assertThat(updated.getName()).isEqualTo(product.getName());
+
+        // 版本已经变成1, 还拿着版本0的请求不会生效
+        Assertions.assertThat(productRepository.update(product.getId(), new Update().inc("stock", -3), 0L, null)).isNull();
+        Assertions.assertThat(productRepository.findById(product.getId())).get().extracting(Product::getStock).isEqualTo(7);
+    }
+
+    @Test
+    void shouldConvertLegacyStringPricesSoRangeQueriesMatchThem() {
+        Product product = Product.builder().id(UUID.randomUUID().toString()).name(faker.commerce().productName()).description(faker.funnyName().name()).price(new BigDecimal("9.50")).stock(1).categoryId("c1").build();
+        productRepository.save(product);
+        Assertions.assertThat(mongoTemplate.getCollection("products").find(new Document("_id", product.getId())).first())
+                .extracting(document -> document.get("price")).isEqualTo(new Decimal128(new BigDecimal("9.50")));
+        // 旧数据: price以字符串存储, 字符串比较时"10.00" < "9.50", 转换前价格区间查不到
+        mongoTemplate.getCollection("products").insertOne(new Document("_id", "legacy").append("name", "legacy").append("price", "10.00").append("stock", 1).append("categoryId", "c1"));
+        ProductFilter filter = new ProductFilter(null, new BigDecimal("9"), new BigDecimal("11"), null, null);
+        Assertions.assertThat(productRepository.findPage(filter, Set.of(), null, 10).getContent()).extracting(Product::getId).containsExactly(product.getId());
+
+        Assertions.assertThat(productRepository.convertLegacyPrices()).isEqualTo(1);
+        Assertions.assertThat(productRepository.convertLegacyPrices()).isZero();
+
+        Assertions.assertThat(productRepository.findPage(filter, Set.of(), null, 10).getContent())
+                .extracting(Product::getId).containsExactlyInAnyOrder(product.getId(), "legacy");
+        Assertions.assertThat(productRepository.findById("legacy")).get().extracting(Product::getPrice).isEqualTo(new BigDecimal("10.00"));
+    }
+
+    @Test
+    void shouldNotUpdateWhenStockIsBelowMinimum() {
+        Product product = Product.builder().id(UUID.randomUUID().toString()).name(faker.commerce().productName()).description(faker.funnyName().name()).price(new BigDecimal(faker.commerce().price())).stock(2).categoryId(UUID.randomUUID().toString()).build();
+        productRepository.save(product);
+
+        Assertions.assertThat(productRepository.update(product.getId(), new Update().inc("stock", -3), null, 3)).isNull();
+        Assertions.assertThat(productRepository.update(product.getId(), new Update().inc("stock", -2), null, 2)).extracting(Product::getStock).isEqualTo(0);
+    }
+
     @Test
     void shouldReturnNullWhenNotFoundId() {
         Assertions.assertThat(productRepository.findById("123465"))
@@ -0,0 +1,57 @@
+package com.moh.yehia.testing.service;
+
+import com.moh.yehia.testing.config.CacheConfig;
+import com.moh.yehia.testing.event.EntityChangeEvent;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.service.impl.CacheInvalidationListener;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+@ExtendWith(MockitoExtension.class)
+class CacheInvalidationListenerTest {
+    @Mock
+    private CategoryCatalog categoryCatalog;
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.PRODUCTS, CacheConfig.CATEGORIES);
+
+    private CacheInvalidationListener cacheInvalidationListener;
+
+    @BeforeEach
+    void setUp() {
+        cacheInvalidationListener = new CacheInvalidationListener(cacheManager, categoryCatalog);
+        cacheManager.getCache(CacheConfig.PRODUCTS).put("p1", new Product());
+        cacheManager.getCache(CacheConfig.PRODUCTS).put("p2", new Product());
+        cacheManager.getCache(CacheConfig.CATEGORIES).put("c1", new Category());
+    }
+
+    @Test
+    void shouldEvictOnlyChangedProduct() {
+        cacheInvalidationListener.onEntityChange(new EntityChangeEvent(Product.class, "p1", "update"));
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.PRODUCTS).get("p1")).isNull();
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.PRODUCTS).get("p2")).isNotNull();
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.CATEGORIES).get("c1")).isNotNull();
+        BDDMockito.verifyNoInteractions(categoryCatalog);
+    }
+
+    @Test
+    void shouldClearProductsCacheOnReset() {
+        cacheInvalidationListener.onEntityChange(EntityChangeEvent.reset(Product.class));
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.PRODUCTS).get("p1")).isNull();
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.PRODUCTS).get("p2")).isNull();
+    }
+
+    @Test
+    void shouldEvictCategoryAndRefreshSnapshot() {
+        cacheInvalidationListener.onEntityChange(new EntityChangeEvent(Category.class, "c1", "delete"));
+        Assertions.assertThat(cacheManager.getCache(CacheConfig.CATEGORIES).get("c1")).isNull();
+        BDDMockito.verify(categoryCatalog).refreshQuietly();
+    }
+}
@@ -0,0 +1,148 @@
+package com.moh.yehia.testing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.config.AppCacheProperties;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.repository.CategoryRepository;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+@ExtendWith(MockitoExtension.class)
+class CategoryCatalogTest {
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CategoryCatalog categoryCatalog;
+
+    // CategoryCatalog的构造方法中有配置参数, 这里手动创建
+    @BeforeEach
+    void setUp() {
+        categoryCatalog = new CategoryCatalog(categoryRepository, objectMapper, true, new ServerProperties(), new AppCacheProperties());
+    }
+
+    @Test
+    void shouldLoadSnapshotOnFirstAccess() throws Exception {
+        // mock
+        List<Category> categories = populateCategories();
+        // given
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(categories);
+        // when
+        CategorySnapshot snapshot = categoryCatalog.current();
+        // then or assertions
+        Assertions.assertThat(snapshot.getCategories()).containsExactlyElementsOf(categories);
+        Assertions.assertThat(snapshot.get("b")).isEqualTo(categories.get(1));
+        Assertions.assertThat(snapshot.getJson()).isEqualTo(objectMapper.writeValueAsBytes(categories));
+    }
+
+    @Test
+    void shouldKeepSnapshotWhenCategoriesUnchanged() {
+        // given: 两次加载返回内容相同的数据
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories(), populateCategories());
+        // when
+        CategorySnapshot first = categoryCatalog.current();
+        categoryCatalog.refresh();
+        // then or assertions
+        Assertions.assertThat(categoryCatalog.current()).isSameAs(first);
+    }
+
+    @Test
+    void shouldReplaceSnapshotWhenCategoriesChange() {
+        // mock
+        List<Category> changedCategories = new ArrayList<>(populateCategories());
+        changedCategories.add(new Category("d", "category d", "description d"));
+        // given
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories(), changedCategories);
+        // when
+        CategorySnapshot first = categoryCatalog.current();
+        categoryCatalog.refresh();
+        // then or assertions
+        Assertions.assertThat(categoryCatalog.current()).isNotSameAs(first);
+        Assertions.assertThat(categoryCatalog.current().size()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldCheckExistenceAgainstSnapshotBeforeDatabase() {
+        // given: 快照中有a、b、c, d是其它实例刚新建的, e不存在
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories());
+        BDDMockito.given(categoryRepository.findById("d")).willReturn(Optional.of(new Category("d", "category d", "description d")));
+        BDDMockito.given(categoryRepository.findById("e")).willReturn(Optional.empty());
+        // when & then
+        Assertions.assertThat(categoryCatalog.exists("a")).isTrue();
+        Assertions.assertThat(categoryCatalog.exists("d")).isTrue();
+        Assertions.assertThat(categoryCatalog.exists("d")).isTrue();
+        Assertions.assertThat(categoryCatalog.exists("e")).isFalse();
+        // 快照命中不查库, 回源查到的分类加入快照后也不再查库
+        BDDMockito.verify(categoryRepository, Mockito.never()).findById("a");
+        BDDMockito.verify(categoryRepository, Mockito.times(1)).findById("d");
+    }
+
+    @Test
+    void shouldRememberMissingCategoryUntilSnapshotChanges() {
+        // mock
+        List<Category> changedCategories = new ArrayList<>(populateCategories());
+        changedCategories.add(new Category("e", "category e", "description e"));
+        // given: e一开始不存在, 之后由其它实例新建, 下一次刷新时出现在快照中
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories(), changedCategories);
+        BDDMockito.given(categoryRepository.findById("e")).willReturn(Optional.empty());
+        // when & then: 连续写入不存在的分类只查一次库
+        Assertions.assertThat(categoryCatalog.exists("e")).isFalse();
+        Assertions.assertThat(categoryCatalog.exists("e")).isFalse();
+        Assertions.assertThat(categoryCatalog.exists("e")).isFalse();
+        BDDMockito.verify(categoryRepository, Mockito.times(1)).findById("e");
+        // 快照替换后这个分类重新可用
+        categoryCatalog.refresh();
+        Assertions.assertThat(categoryCatalog.exists("e")).isTrue();
+    }
+
+    @Test
+    void shouldForgetMissingCategoryWhenSavedLocally() {
+        // given
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories());
+        BDDMockito.given(categoryRepository.findById("e")).willReturn(Optional.empty());
+        Assertions.assertThat(categoryCatalog.exists("e")).isFalse();
+        // when
+        categoryCatalog.added(new Category("e", "category e", "description e"));
+        // then or assertions
+        Assertions.assertThat(categoryCatalog.exists("e")).isTrue();
+    }
+
+    @Test
+    void shouldAddSavedCategoryToSnapshot() {
+        // given
+        BDDMockito.given(categoryRepository.findAll(ArgumentMatchers.any(Sort.class))).willReturn(populateCategories());
+        categoryCatalog.current();
+        // when
+        categoryCatalog.added(new Category("0", "category 0", "description 0"));
+        // then or assertions: 新数据按id排序插入到快照中
+        Assertions.assertThat(categoryCatalog.current().getCategories())
+                .extracting(Category::getId)
+                .containsExactly("0", "a", "b", "c");
+        Assertions.assertThat(categoryCatalog.find("0")).isNotNull();
+    }
+
+    private List<Category> populateCategories() {
+        return Arrays.asList(
+                new Category("a", "category a", "description a"),
+                new Category("b", "category b", "description b"),
+                new Category("c", "category c", "description c")
+        );
+    }
+}
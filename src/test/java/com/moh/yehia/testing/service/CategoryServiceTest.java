@@ -1,10 +1,18 @@
 package com.moh.yehia.testing.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.javafaker.Faker;
+import com.moh.yehia.testing.exception.InvalidRequestException;
 import com.moh.yehia.testing.model.Category;
 import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.repository.CategoryRepository;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
 import com.moh.yehia.testing.service.impl.CategoryServiceImpl;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.IdGenerator;
+import com.moh.yehia.testing.util.MonotonicIdGenerator;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -13,6 +21,8 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.*;
@@ -24,7 +34,14 @@ class CategoryServiceTest {
 	// service层的测试因为脱离Spring容器, 所以可以不用@MockBean来模拟容器中的对象, 只需要使用@Mock将service依赖的Repository对象替换为Mock对象即可
     @Mock
     private CategoryRepository categoryRepository;
+
+    @Mock
+    private CategoryCatalog categoryCatalog;
     // 依赖注入到准备测试的service类上(本CategoryTest测的就是CategoryServiceImpl类中的各方法的业务逻辑)以实现对对象类的单体测试
+    // 用真实的id生成器, 保存后的数据有可用的id
+    @Spy
+    private IdGenerator idGenerator = new MonotonicIdGenerator();
+
     @InjectMocks
     private CategoryServiceImpl categoryService;
 
@@ -52,6 +69,70 @@ class CategoryServiceTest {
                 .doesNotContainNull();
     }
 
+    @Test
+    void shouldReturnFirstPageFromSnapshotWithNextCursor() {
+        // mock
+        CategorySnapshot snapshot = CategorySnapshot.of(populateCategoriesList(), new ObjectMapper());
+        // given
+        BDDMockito.given(categoryCatalog.current()).willReturn(snapshot);
+        // when
+        CursorPage<Category> page = categoryService.findPage(null, 2);
+        // then or assertions: 快照按id排序, 第一页是排序后的前两条
+        Assertions.assertThat(page.getItems()).containsExactly(snapshot.getCategories().get(0), snapshot.getCategories().get(1));
+        Assertions.assertThat(CursorPaging.decode(page.getNextCursor())).isEqualTo(snapshot.getCategories().get(1).getId());
+    }
+
+    @Test
+    void shouldReturnLastPageFromSnapshotWithoutNextCursor() {
+        // mock
+        CategorySnapshot snapshot = CategorySnapshot.of(populateCategoriesList(), new ObjectMapper());
+        String cursor = CursorPaging.encode(snapshot.getCategories().get(1).getId());
+        // given
+        BDDMockito.given(categoryCatalog.current()).willReturn(snapshot);
+        // when
+        CursorPage<Category> page = categoryService.findPage(cursor, 10);
+        // then or assertions
+        Assertions.assertThat(page.getItems()).containsExactly(snapshot.getCategories().get(2));
+        Assertions.assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void shouldRejectInvalidPageLimit() {
+        Assertions.assertThatThrownBy(() -> categoryService.findPage(null, 0))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void shouldReturnCategoryFromSnapshotWithoutQueryingRepository() {
+        // mock
+        Category category = populateRandomCategory();
+        // given
+        BDDMockito.given(categoryCatalog.find(category.getId())).willReturn(category);
+        // when
+        Category retrievedCategory = categoryService.findById(category.getId());
+        // then or assertions
+        Assertions.assertThat(retrievedCategory).isSameAs(category);
+        Mockito.verifyNoInteractions(categoryRepository);
+    }
+
+    @Test
+    void shouldResolveCategoriesFromSnapshotAndQueryOnlyMissingIds() {
+        // mock
+        CategorySnapshot snapshot = CategorySnapshot.of(populateCategoriesList(), new ObjectMapper());
+        Category cached = snapshot.getCategories().get(0);
+        Category created = populateRandomCategory();
+        // given: created是其它实例刚新建的, 还不在快照中
+        BDDMockito.given(categoryCatalog.current()).willReturn(snapshot);
+        BDDMockito.given(categoryRepository.findAllById(List.of(created.getId(), "missing"))).willReturn(List.of(created));
+        // when
+        Map<String, Category> categories = categoryService.findAllById(List.of(cached.getId(), created.getId(), "missing"));
+        // then or assertions
+        Assertions.assertThat(categories)
+                .containsEntry(cached.getId(), cached)
+                .containsEntry(created.getId(), created)
+                .doesNotContainKey("missing");
+    }
+
     @Test
     void shouldReturnCategoryByValidCategoryId() {
         // mock
@@ -81,6 +162,8 @@ class CategoryServiceTest {
                 .hasId()
                 .hasName(categoryRequest.getName())
                 .hasDescription(categoryRequest.getDescription());
+        // 保存后要同步更新分类快照
+        Mockito.verify(categoryCatalog).added(category);
     }
 
     private List<Category> populateCategoriesList() {
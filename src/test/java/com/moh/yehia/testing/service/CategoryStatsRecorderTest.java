@@ -0,0 +1,94 @@
+package com.moh.yehia.testing.service;
+
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.repository.CategoryStatsRepository;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class CategoryStatsRecorderTest {
+    @Mock
+    private CategoryStatsRepository categoryStatsRepository;
+
+    private final CategoryStatsProperties properties = new CategoryStatsProperties();
+
+    private CategoryStatsRecorder recorder;
+
+    @BeforeEach
+    void setUp() {
+        properties.setIncremental(true);
+        recorder = new CategoryStatsRecorder(categoryStatsRepository, properties);
+    }
+
+    @Test
+    void shouldIncrementEachCategoryOnceForCreatedProducts() {
+        // when
+        recorder.created(List.of(product("c1", "10.00", 2), product("c1", "2.50", 4), product("c2", "1", 1)));
+        // then
+        Mockito.verify(categoryStatsRepository).increment("c1", 2, 6, new BigDecimal("30.00"));
+        Mockito.verify(categoryStatsRepository).increment("c2", 1, 1, new BigDecimal("1"));
+        Mockito.verifyNoMoreInteractions(categoryStatsRepository);
+    }
+
+    @Test
+    void shouldMoveProductBetweenCategories() {
+        // when
+        recorder.changed(product("c1", "10", 3), product("c2", "12", 3));
+        // then
+        Mockito.verify(categoryStatsRepository).increment("c1", -1, -3, new BigDecimal("-30"));
+        Mockito.verify(categoryStatsRepository).increment("c2", 1, 3, new BigDecimal("36"));
+    }
+
+    @Test
+    void shouldApplyOnlyTheDifferenceWithinCategory() {
+        // when: 只改了名称, 统计没有变化时不写库
+        recorder.changed(product("c1", "10", 3), product("c1", "10", 3));
+        recorder.changed(product("c1", "10", 3), product("c1", "10", 5));
+        // then
+        Mockito.verify(categoryStatsRepository).increment("c1", 0, 2, new BigDecimal("20"));
+        Mockito.verifyNoMoreInteractions(categoryStatsRepository);
+    }
+
+    @Test
+    void shouldDecreaseStockAndValueOnReservation() {
+        // when
+        recorder.reserved(product("c1", "4.50", 8), 2);
+        // then
+        Mockito.verify(categoryStatsRepository).increment("c1", 0, -2, new BigDecimal("-9.00"));
+    }
+
+    @Test
+    void shouldDoNothingWhenNotIncremental() {
+        properties.setIncremental(false);
+        // when
+        recorder.created(List.of(product("c1", "1", 1)));
+        recorder.reserved(product("c1", "1", 1), 1);
+        recorder.rebuild();
+        // then
+        Mockito.verifyNoInteractions(categoryStatsRepository);
+    }
+
+    @Test
+    void shouldRebuildSummaryFromAggregation() {
+        // given
+        BDDMockito.willDoNothing().given(categoryStatsRepository).rebuild();
+        // when
+        recorder.rebuild();
+        // then
+        Mockito.verify(categoryStatsRepository).rebuild();
+    }
+
+    private static Product product(String categoryId, String price, int stock) {
+        return Product.builder().id("p").categoryId(categoryId).price(new BigDecimal(price)).stock(stock).build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.moh.yehia.testing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moh.yehia.testing.config.CategoryStatsProperties;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategorySnapshot;
+import com.moh.yehia.testing.model.CategoryStats;
+import com.moh.yehia.testing.repository.CategoryStatsRepository;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import com.moh.yehia.testing.service.impl.CategoryStatsServiceImpl;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@ExtendWith(MockitoExtension.class)
+class CategoryStatsServiceTest {
+    @Mock
+    private CategoryStatsRepository categoryStatsRepository;
+
+    @Mock
+    private CategoryCatalog categoryCatalog;
+
+    @Spy
+    private CategoryStatsProperties properties = new CategoryStatsProperties();
+
+    @InjectMocks
+    private CategoryStatsServiceImpl categoryStatsService;
+
+    @Test
+    void shouldAggregateStatsOfCategoryByDefault() {
+        // mock
+        CategoryStats stats = new CategoryStats("c1", 2, 10, new BigDecimal("99.90"));
+        // given
+        BDDMockito.given(categoryCatalog.exists("c1")).willReturn(true);
+        BDDMockito.given(categoryStatsRepository.aggregate("c1")).willReturn(List.of(stats));
+        // when & then
+        Assertions.assertThat(categoryStatsService.findByCategoryId("c1")).isEqualTo(stats);
+        Mockito.verify(categoryStatsRepository, Mockito.never()).findById(ArgumentMatchers.anyString());
+    }
+
+    @Test
+    void shouldReadSummaryDocumentWhenIncremental() {
+        // mock
+        properties.setIncremental(true);
+        CategoryStats stats = new CategoryStats("c1", 2, 10, new BigDecimal("99.90"));
+        // given
+        BDDMockito.given(categoryCatalog.exists("c1")).willReturn(true);
+        BDDMockito.given(categoryStatsRepository.findById("c1")).willReturn(Optional.of(stats));
+        // when & then
+        Assertions.assertThat(categoryStatsService.findByCategoryId("c1")).isEqualTo(stats);
+        Mockito.verify(categoryStatsRepository, Mockito.never()).aggregate(ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldReturnZerosForCategoryWithoutProducts() {
+        // given
+        BDDMockito.given(categoryCatalog.exists("c1")).willReturn(true);
+        BDDMockito.given(categoryStatsRepository.aggregate("c1")).willReturn(List.of());
+        // when & then
+        Assertions.assertThat(categoryStatsService.findByCategoryId("c1")).isEqualTo(CategoryStats.empty("c1"));
+    }
+
+    @Test
+    void shouldRejectUnknownCategory() {
+        Assertions.assertThatThrownBy(() -> categoryStatsService.findByCategoryId("missing"))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("Category not found with this id: missing");
+        Mockito.verifyNoInteractions(categoryStatsRepository);
+    }
+
+    @Test
+    void shouldReturnOneEntryPerKnownCategory() {
+        // mock: c3没有商品, orphan是商品引用的不存在的分类
+        CategorySnapshot snapshot = CategorySnapshot.of(List.of(
+                new Category("c1", "c1", "c1"), new Category("c2", "c2", "c2"), new Category("c3", "c3", "c3")), new ObjectMapper());
+        CategoryStats c1 = new CategoryStats("c1", 1, 5, new BigDecimal("50"));
+        CategoryStats c2 = new CategoryStats("c2", 3, 0, BigDecimal.ZERO);
+        CategoryStats orphan = new CategoryStats("orphan", 1, 1, BigDecimal.ONE);
+        // given
+        BDDMockito.given(categoryCatalog.current()).willReturn(snapshot);
+        BDDMockito.given(categoryStatsRepository.aggregate(null)).willReturn(List.of(c1, c2, orphan));
+        // when & then
+        Assertions.assertThat(categoryStatsService.findAll()).containsExactly(c1, c2, CategoryStats.empty("c3"));
+    }
+}
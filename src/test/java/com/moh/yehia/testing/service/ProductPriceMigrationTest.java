@@ -0,0 +1,45 @@
+package com.moh.yehia.testing.service;
+
+import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.impl.ProductPriceMigration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+@ExtendWith(MockitoExtension.class)
+class ProductPriceMigrationTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Test
+    void shouldConvertLegacyPricesWhenEnabled() {
+        // given
+        BDDMockito.given(productRepository.convertLegacyPrices()).willReturn(3L);
+        // when
+        new ProductPriceMigration(productRepository, true).migrate();
+        // then
+        Mockito.verify(productRepository).convertLegacyPrices();
+    }
+
+    @Test
+    void shouldNotTouchDatabaseWhenDisabled() {
+        // when
+        new ProductPriceMigration(productRepository, false).migrate();
+        // then
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void shouldNotFailStartupWhenDatabaseIsUnavailable() {
+        // given
+        BDDMockito.given(productRepository.convertLegacyPrices()).willThrow(new DataAccessResourceFailureException("down"));
+        // when
+        new ProductPriceMigration(productRepository, true).migrate();
+        // then
+        Mockito.verify(productRepository).convertLegacyPrices();
+    }
+}
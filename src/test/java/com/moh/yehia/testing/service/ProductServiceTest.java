@@ -1,11 +1,28 @@
 package com.moh.yehia.testing.service;
 
 import com.github.javafaker.Faker;
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.BatchItemResult;
+import com.moh.yehia.testing.model.BatchResult;
+import com.moh.yehia.testing.model.CursorPage;
 import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductFilter;
+import com.moh.yehia.testing.model.ProductPatch;
 import com.moh.yehia.testing.model.ProductRequest;
 import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
 import com.moh.yehia.testing.service.impl.ProductServiceImpl;
+import com.moh.yehia.testing.service.impl.StockReservationCoalescer;
+import com.moh.yehia.testing.util.CursorPaging;
+import com.moh.yehia.testing.util.FieldSelection;
+import com.moh.yehia.testing.util.IdGenerator;
+import com.moh.yehia.testing.util.MonotonicIdGenerator;
 import org.assertj.core.api.Assertions;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,7 +30,13 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -25,6 +48,26 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    // 批量导入需要真实的校验器和配置, 用@Spy包装真实对象, 让@InjectMocks也能注入它们
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    private ProductBatchProperties productBatchProperties = new ProductBatchProperties();
+
+    @Mock
+    private StockReservationCoalescer stockReservationCoalescer;
+
+    @Mock
+    private CategoryCatalog categoryCatalog;
+
+    @Mock
+    private CategoryStatsRecorder categoryStatsRecorder;
+
+    // 用真实的id生成器, 保存后的数据有可用的id
+    @Spy
+    private IdGenerator idGenerator = new MonotonicIdGenerator();
+
     @InjectMocks
     private ProductServiceImpl productService;
 
@@ -50,6 +93,77 @@ class ProductServiceTest {
                 .hasSameSizeAs(products);
     }
 
+    @Test
+    void shouldReturnFirstPageWithNextCursor() {
+        // mock
+        List<Product> products = populateProductList();
+        // given
+        BDDMockito.given(productRepository.findByIdGreaterThan("", PageRequest.of(0, 3, Sort.by("id"))))
+                .willReturn(new SliceImpl<>(products, PageRequest.of(0, 3), true));
+        // when
+        CursorPage<Product> page = productService.findPage(new ProductFilter(), FieldSelection.all(), null, 3);
+        // then or assertions
+        Assertions.assertThat(page.getItems()).hasSameSizeAs(products);
+        Assertions.assertThat(CursorPaging.decode(page.getNextCursor())).isEqualTo(products.get(2).getId());
+    }
+
+    @Test
+    void shouldReturnLastPageWithoutNextCursor() {
+        // mock
+        List<Product> products = populateProductList();
+        String lastId = products.get(0).getId();
+        // given
+        BDDMockito.given(productRepository.findByIdGreaterThan(lastId, PageRequest.of(0, 10, Sort.by("id"))))
+                .willReturn(new SliceImpl<>(products, PageRequest.of(0, 10), false));
+        // when
+        CursorPage<Product> page = productService.findPage(new ProductFilter(), FieldSelection.all(), CursorPaging.encode(lastId), 10);
+        // then or assertions
+        Assertions.assertThat(page.getItems()).hasSameSizeAs(products);
+        Assertions.assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void shouldRejectInvalidPageLimit() {
+        Assertions.assertThatThrownBy(() -> productService.findPage(new ProductFilter(), FieldSelection.all(), null, 0))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void shouldUseFilteredQueryWhenFilterGiven() {
+        // mock
+        List<Product> products = populateProductList();
+        ProductFilter filter = new ProductFilter("c1", null, null, true, null);
+        // given
+        BDDMockito.given(productRepository.findPage(filter, Set.of(), "", 10))
+                .willReturn(new SliceImpl<>(products, PageRequest.of(0, 10), false));
+        // when
+        CursorPage<Product> page = productService.findPage(filter, FieldSelection.all(), null, 10);
+        // then or assertions
+        Assertions.assertThat(page.getItems()).hasSameSizeAs(products);
+        BDDMockito.verify(productRepository, Mockito.never()).findByIdGreaterThan(ArgumentMatchers.anyString(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldPushProjectionDownWhenFieldsSelected() {
+        // mock
+        List<Product> products = populateProductList();
+        FieldSelection fields = FieldSelection.parse("name,price", Product.class);
+        // given
+        BDDMockito.given(productRepository.findPage(new ProductFilter(), Set.of("id", "name", "price"), "", 10))
+                .willReturn(new SliceImpl<>(products, PageRequest.of(0, 10), false));
+        // when
+        CursorPage<Product> page = productService.findPage(null, fields, null, 10);
+        // then or assertions
+        Assertions.assertThat(page.getItems()).hasSameSizeAs(products);
+    }
+
+    @Test
+    void shouldRejectInvertedPriceRange() {
+        ProductFilter filter = new ProductFilter(null, new BigDecimal("20"), new BigDecimal("10"), null, null);
+        Assertions.assertThatThrownBy(() -> productService.findPage(filter, FieldSelection.all(), null, 10))
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
     @Test
     void shouldReturnProductWithValidId() {
         // mock
@@ -71,6 +185,7 @@ class ProductServiceTest {
         ProductRequest productRequest = populateRandomPRoductRequest();
         Product product = populateValidProduct(productRequest);
         // given
+        BDDMockito.given(categoryCatalog.exists(ArgumentMatchers.anyString())).willReturn(true);
         BDDMockito.given(productRepository.save(ArgumentMatchers.any(Product.class))).willReturn(product);
         // when
         Product savedProduct = productService.save(productRequest);
@@ -84,6 +199,176 @@ class ProductServiceTest {
                 .hasPrice(productRequest.getPrice());
     }
 
+    @Test
+    void shouldInsertValidProductsInChunksAndReportEachItem() {
+        // mock
+        productBatchProperties.setChunkSize(2);
+        List<ProductRequest> productRequests = Arrays.asList(
+                populateRandomPRoductRequest(),
+                new ProductRequest("", "", null, "", 0),
+                populateRandomPRoductRequest(),
+                populateRandomPRoductRequest()
+        );
+        // given
+        BDDMockito.given(categoryCatalog.exists(ArgumentMatchers.anyString())).willReturn(true);
+        BDDMockito.given(productRepository.insertUnordered(ArgumentMatchers.anyList())).willReturn(Map.of());
+        // when
+        BatchResult batchResult = productService.saveAll(productRequests.iterator());
+        // then or assertions
+        Assertions.assertThat(batchResult.getCreated()).isEqualTo(3);
+        Assertions.assertThat(batchResult.getFailed()).isEqualTo(1);
+        Assertions.assertThat(batchResult.getItems())
+                .extracting(BatchItemResult::getStatus)
+                .containsExactly(BatchItemResult.CREATED, BatchItemResult.INVALID, BatchItemResult.CREATED, BatchItemResult.CREATED);
+        Assertions.assertThat(batchResult.getItems().get(1).getErrors())
+                .containsEntry("name", "must not be blank")
+                .containsEntry("price", "must not be null");
+        // 3条合法数据, 每批2条, 应该分两次写入
+        Mockito.verify(productRepository, Mockito.times(2)).insertUnordered(ArgumentMatchers.anyList());
+    }
+
+    @Test
+    void shouldMarkItemsRejectedByMongoAsFailed() {
+        // mock
+        List<ProductRequest> productRequests = Arrays.asList(populateRandomPRoductRequest(), populateRandomPRoductRequest());
+        // given
+        BDDMockito.given(categoryCatalog.exists(ArgumentMatchers.anyString())).willReturn(true);
+        BDDMockito.given(productRepository.insertUnordered(ArgumentMatchers.anyList())).willReturn(Map.of(1, "E11000 duplicate key error"));
+        // when
+        BatchResult batchResult = productService.saveAll(productRequests.iterator());
+        // then or assertions
+        Assertions.assertThat(batchResult.getCreated()).isEqualTo(1);
+        Assertions.assertThat(batchResult.getFailed()).isEqualTo(1);
+        Assertions.assertThat(batchResult.getItems().get(0).getId()).isNotNull();
+        Assertions.assertThat(batchResult.getItems().get(1).getStatus()).isEqualTo(BatchItemResult.FAILED);
+        Assertions.assertThat(batchResult.getItems().get(1).getId()).isNull();
+    }
+
+    @Test
+    void shouldRejectProductWithUnknownCategory() {
+        // mock
+        ProductRequest productRequest = populateRandomPRoductRequest();
+        // given
+        BDDMockito.given(categoryCatalog.exists(productRequest.getCategoryId())).willReturn(false);
+        // when & then
+        Assertions.assertThatThrownBy(() -> productService.save(productRequest))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("Category not found with this id: " + productRequest.getCategoryId());
+        BDDMockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void shouldMarkItemsWithUnknownCategoryAsInvalidAndCheckEachCategoryOnce() {
+        // mock: 两条数据属于同一个不存在的分类, 一条属于存在的分类
+        ProductRequest known = populateRandomPRoductRequest();
+        ProductRequest unknown = populateRandomPRoductRequest();
+        ProductRequest sameUnknown = populateRandomPRoductRequest();
+        sameUnknown.setCategoryId(unknown.getCategoryId());
+        // given
+        BDDMockito.given(categoryCatalog.exists(known.getCategoryId())).willReturn(true);
+        BDDMockito.given(categoryCatalog.exists(unknown.getCategoryId())).willReturn(false);
+        BDDMockito.given(productRepository.insertUnordered(ArgumentMatchers.anyList())).willReturn(Map.of());
+        // when
+        BatchResult batchResult = productService.saveAll(List.of(known, unknown, sameUnknown).iterator());
+        // then or assertions
+        Assertions.assertThat(batchResult.getItems())
+                .extracting(BatchItemResult::getStatus)
+                .containsExactly(BatchItemResult.CREATED, BatchItemResult.INVALID, BatchItemResult.INVALID);
+        Assertions.assertThat(batchResult.getItems().get(1).getErrors()).containsEntry("categoryId", "category does not exist");
+        Mockito.verify(categoryCatalog, Mockito.times(1)).exists(unknown.getCategoryId());
+    }
+
+    @Test
+    void shouldUpdateProductWhenVersionMatches() {
+        // mock
+        ProductRequest productRequest = populateRandomPRoductRequest();
+        Product updated = populateValidProduct(productRequest);
+        updated.setVersion(4L);
+        // given
+        BDDMockito.given(categoryCatalog.exists(ArgumentMatchers.anyString())).willReturn(true);
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq(updated.getId()), ArgumentMatchers.any(), ArgumentMatchers.eq(3L), ArgumentMatchers.isNull())).willReturn(updated);
+        // when & then
+        Assertions.assertThat(productService.update(updated.getId(), productRequest, 3L)).isSameAs(updated);
+    }
+
+    @Test
+    void shouldRecordStatsChangeWithTheVersionThatWasUpdated() {
+        // mock: 第一次读到的版本在更新前被其它请求改掉了, 重新读一次后再更新
+        Product stale = Product.builder().id("p1").categoryId("c1").price(BigDecimal.TEN).stock(5).version(1L).build();
+        Product before = Product.builder().id("p1").categoryId("c1").price(BigDecimal.TEN).stock(4).version(2L).build();
+        Product after = Product.builder().id("p1").categoryId("c1").price(BigDecimal.TEN).stock(7).version(3L).build();
+        // given
+        BDDMockito.given(categoryStatsRecorder.isEnabled()).willReturn(true);
+        BDDMockito.given(productRepository.findById("p1")).willReturn(Optional.of(stale), Optional.of(before));
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(1L), ArgumentMatchers.isNull())).willReturn(null);
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(2L), ArgumentMatchers.isNull())).willReturn(after);
+        // when
+        Product updated = productService.patch("p1", new ProductPatch(null, null, null, null, null, 3), null);
+        // then or assertions
+        Assertions.assertThat(updated).isSameAs(after);
+        Mockito.verify(categoryStatsRecorder).changed(before, after);
+    }
+
+    @Test
+    void shouldThrowConflictWhenVersionIsStale() {
+        // given
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(3L), ArgumentMatchers.eq(1))).willReturn(null);
+        BDDMockito.given(productRepository.findById("p1")).willReturn(Optional.of(Product.builder().id("p1").stock(10).version(4L).build()));
+        // when & then
+        Assertions.assertThatThrownBy(() -> productService.patch("p1", new ProductPatch(null, null, null, null, null, -1), 3L))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void shouldRejectStockDeltaThatWouldMakeStockNegative() {
+        // given
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq(5))).willReturn(null);
+        BDDMockito.given(productRepository.findById("p1")).willReturn(Optional.of(Product.builder().id("p1").stock(3).version(2L).build()));
+        // when & then
+        Assertions.assertThatThrownBy(() -> productService.patch("p1", new ProductPatch(null, null, null, null, null, -5), null))
+                .isInstanceOf(InsufficientStockException.class)
+                .hasMessage("Insufficient stock for product p1, requested 5");
+    }
+
+    @Test
+    void shouldGiveUpAfterRepeatedConcurrentModifications() {
+        // given: 每次读出的版本在更新前都被其它请求改掉了
+        Product current = Product.builder().id("p1").categoryId("c1").price(BigDecimal.TEN).stock(5).version(1L).build();
+        BDDMockito.given(categoryStatsRecorder.isEnabled()).willReturn(true);
+        BDDMockito.given(productRepository.findById("p1")).willReturn(Optional.of(current));
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(1L), ArgumentMatchers.isNull())).willReturn(null);
+        // when & then
+        Assertions.assertThatThrownBy(() -> productService.patch("p1", new ProductPatch(null, null, null, null, null, 3), null))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        Mockito.verify(productRepository, Mockito.times(5)).update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(1L), ArgumentMatchers.isNull());
+        Mockito.verify(categoryStatsRecorder, Mockito.never()).changed(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldThrowNotFoundWhenUpdatingUnknownProduct() {
+        // given
+        BDDMockito.given(categoryCatalog.exists(ArgumentMatchers.anyString())).willReturn(true);
+        BDDMockito.given(productRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.isNull())).willReturn(null);
+        // when & then
+        Assertions.assertThatThrownBy(() -> productService.update("p1", populateRandomPRoductRequest(), null))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("Product not found with this id: p1");
+    }
+
+    @Test
+    void shouldRejectNonPositiveReservation() {
+        Assertions.assertThatThrownBy(() -> productService.reserve("p1", 0))
+                .isInstanceOf(InvalidRequestException.class);
+        BDDMockito.verifyNoInteractions(stockReservationCoalescer);
+    }
+
+    @Test
+    void shouldRejectEmptyPatch() {
+        Assertions.assertThatThrownBy(() -> productService.patch("p1", new ProductPatch(), null))
+                .isInstanceOf(InvalidRequestException.class);
+        BDDMockito.verifyNoInteractions(productRepository);
+    }
+
     private Product populateValidProduct(ProductRequest productRequest) {
         return Product.builder()
                 .id(UUID.randomUUID().toString())
@@ -0,0 +1,214 @@
+package com.moh.yehia.testing.service;
+
+import com.github.javafaker.Faker;
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.BatchItemResult;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductPatch;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.repository.ReactiveCategoryRepository;
+import com.moh.yehia.testing.repository.ReactiveProductRepository;
+import com.moh.yehia.testing.service.design.CategoryStatsService;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import com.moh.yehia.testing.service.impl.ReactiveCategoryServiceImpl;
+import com.moh.yehia.testing.service.impl.ReactiveProductServiceImpl;
+import com.moh.yehia.testing.util.IdGenerator;
+import com.moh.yehia.testing.util.MonotonicIdGenerator;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+
+// reactive profile中的写操作要和servlet模式有相同的副作用(分类汇总、分类快照)和相同的错误区分
+@ExtendWith(MockitoExtension.class)
+class ReactiveProductServiceTest {
+    @Mock
+    private ReactiveProductRepository reactiveProductRepository;
+
+    @Mock
+    private ReactiveCategoryRepository reactiveCategoryRepository;
+
+    @Mock
+    private CategoryCatalog categoryCatalog;
+
+    @Mock
+    private CategoryStatsRecorder categoryStatsRecorder;
+
+    @Mock
+    private CategoryStatsService categoryStatsService;
+
+    private final IdGenerator idGenerator = new MonotonicIdGenerator();
+
+    private static Faker faker;
+
+    private static ValidatorFactory validatorFactory;
+
+    @BeforeAll
+    static void initializeFaker() {
+        faker = new Faker(Locale.ENGLISH);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+    }
+
+    @AfterAll
+    static void closeValidatorFactory() {
+        validatorFactory.close();
+    }
+
+    @Test
+    void shouldRecordCategoryStatsWhenProductSaved() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        ProductRequest productRequest = new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal("9.99"), "c1", 5);
+        // given
+        BDDMockito.given(categoryCatalog.find("c1")).willReturn(Category.builder().id("c1").build());
+        BDDMockito.given(reactiveProductRepository.save(ArgumentMatchers.any(Product.class))).willAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        BDDMockito.given(categoryStatsRecorder.isEnabled()).willReturn(true);
+        // when
+        StepVerifier.create(reactiveProductService.save(productRequest))
+                .expectNextMatches(product -> "c1".equals(product.getCategoryId()) && product.getStock() == 5)
+                .verifyComplete();
+        // then
+        BDDMockito.verify(categoryStatsRecorder).created(ArgumentMatchers.argThat(products -> products.size() == 1));
+    }
+
+    @Test
+    void shouldNotRecordCategoryStatsWhenCategoryMissing() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        ProductRequest productRequest = new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal("9.99"), "missing", 5);
+        // given
+        BDDMockito.given(reactiveCategoryRepository.findById("missing")).willReturn(Mono.empty());
+        // when
+        StepVerifier.create(reactiveProductService.save(productRequest))
+                .expectError(InvalidRequestException.class)
+                .verify();
+        // then
+        BDDMockito.verify(reactiveProductRepository, Mockito.never()).save(ArgumentMatchers.any(Product.class));
+        BDDMockito.verify(categoryStatsRecorder, Mockito.never()).created(ArgumentMatchers.any());
+    }
+
+    @Test
+    void shouldFailUpdateWhenVersionDoesNotMatch() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        ProductRequest productRequest = new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal("9.99"), "c1", 5);
+        // given
+        BDDMockito.given(categoryCatalog.find("c1")).willReturn(Category.builder().id("c1").build());
+        BDDMockito.given(reactiveProductRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.eq(3L), ArgumentMatchers.isNull()))
+                .willReturn(Mono.empty());
+        BDDMockito.given(reactiveProductRepository.findById("p1")).willReturn(Mono.just(Product.builder().id("p1").stock(5).version(4L).build()));
+        // when
+        StepVerifier.create(reactiveProductService.update("p1", productRequest, 3L))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldRejectPatchWhenStockDeltaExceedsStock() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        ProductPatch productPatch = new ProductPatch();
+        productPatch.setStockDelta(-3);
+        // given
+        BDDMockito.given(reactiveProductRepository.update(ArgumentMatchers.eq("p1"), ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq(3)))
+                .willReturn(Mono.empty());
+        BDDMockito.given(reactiveProductRepository.findById("p1")).willReturn(Mono.just(Product.builder().id("p1").stock(2).version(1L).build()));
+        // when
+        StepVerifier.create(reactiveProductService.patch("p1", productPatch, null))
+                .expectError(InsufficientStockException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReserveStockAtomically() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        // given
+        BDDMockito.given(reactiveProductRepository.reserve("p1", 2)).willReturn(Mono.just(Product.builder().id("p1").stock(3).build()));
+        // when
+        StepVerifier.create(reactiveProductService.reserve("p1", 2))
+                .expectNextMatches(result -> result.getRemainingStock() == 3)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldDistinguishInsufficientStockFromMissingProductOnReserve() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        // given
+        BDDMockito.given(reactiveProductRepository.reserve(ArgumentMatchers.anyString(), ArgumentMatchers.eq(2))).willReturn(Mono.empty());
+        BDDMockito.given(reactiveProductRepository.existsById("p1")).willReturn(Mono.just(true));
+        BDDMockito.given(reactiveProductRepository.existsById("missing")).willReturn(Mono.just(false));
+        // when
+        // then
+        StepVerifier.create(reactiveProductService.reserve("p1", 2))
+                .expectError(InsufficientStockException.class)
+                .verify();
+        StepVerifier.create(reactiveProductService.reserve("missing", 2))
+                .expectError(InvalidRequestException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReportInvalidAndFailedItemsInBatch() {
+        // mock
+        ReactiveProductServiceImpl reactiveProductService = newReactiveProductService();
+        ProductRequest valid = new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal("9.99"), "c1", 5);
+        ProductRequest invalid = new ProductRequest("", faker.funnyName().name(), new BigDecimal("9.99"), "c1", 5);
+        ProductRequest duplicate = new ProductRequest(faker.commerce().productName(), faker.funnyName().name(), new BigDecimal("1.99"), "c1", 1);
+        // given
+        BDDMockito.given(categoryCatalog.find("c1")).willReturn(Category.builder().id("c1").build());
+        BDDMockito.given(reactiveProductRepository.insertUnordered(ArgumentMatchers.argThat(products -> products.size() == 2)))
+                .willReturn(Mono.just(Map.of(1, "duplicate key")));
+        // when
+        // then
+        StepVerifier.create(reactiveProductService.saveAll(Flux.just(valid, invalid, duplicate)))
+                .assertNext(result -> {
+                    Assertions.assertThat(result.getCreated()).isEqualTo(1);
+                    Assertions.assertThat(result.getFailed()).isEqualTo(2);
+                    Assertions.assertThat(result.getItems()).extracting(BatchItemResult::getStatus)
+                            .containsExactly(BatchItemResult.CREATED, BatchItemResult.INVALID, BatchItemResult.FAILED);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldAddSavedCategoryToCatalog() {
+        // mock
+        ReactiveCategoryServiceImpl reactiveCategoryService = new ReactiveCategoryServiceImpl(reactiveCategoryRepository, categoryCatalog,
+                categoryStatsService, idGenerator);
+        // given
+        BDDMockito.given(reactiveCategoryRepository.save(ArgumentMatchers.any(Category.class))).willAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        // when
+        Category saved = reactiveCategoryService.save(new CategoryRequest(faker.commerce().department(), faker.funnyName().name())).block();
+        // then
+        Assertions.assertThat(saved).isNotNull();
+        BDDMockito.verify(categoryCatalog).added(saved);
+    }
+
+    private ReactiveProductServiceImpl newReactiveProductService() {
+        return new ReactiveProductServiceImpl(reactiveProductRepository, reactiveCategoryRepository, categoryCatalog, categoryStatsRecorder,
+                validatorFactory.getValidator(), new ProductBatchProperties(), idGenerator);
+    }
+}
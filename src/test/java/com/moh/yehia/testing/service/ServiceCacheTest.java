@@ -0,0 +1,135 @@
+package com.moh.yehia.testing.service;
+
+import com.moh.yehia.testing.config.AppCacheProperties;
+import com.moh.yehia.testing.config.CacheConfig;
+import com.moh.yehia.testing.config.IdGeneratorConfig;
+import com.moh.yehia.testing.config.ProductBatchProperties;
+import com.moh.yehia.testing.model.Category;
+import com.moh.yehia.testing.model.CategoryRequest;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ProductRequest;
+import com.moh.yehia.testing.repository.CategoryRepository;
+import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.design.CategoryService;
+import com.moh.yehia.testing.service.design.ProductService;
+import com.moh.yehia.testing.service.impl.CategoryCatalog;
+import com.moh.yehia.testing.service.impl.CategoryServiceImpl;
+import com.moh.yehia.testing.service.impl.ProductServiceImpl;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import com.moh.yehia.testing.service.impl.StockReservationCoalescer;
+import jakarta.validation.Validator;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+
+// 缓存注解要经过spring的代理才生效, 所以这里只启动service和缓存配置这几个bean, repository仍然用mock
+@SpringBootTest(classes = {ProductServiceImpl.class, CategoryServiceImpl.class, CacheConfig.class, IdGeneratorConfig.class, ServiceCacheTest.CachePropertiesConfig.class})
+class ServiceCacheTest {
+    @MockBean
+    private ProductRepository productRepository;
+
+    @MockBean
+    private CategoryRepository categoryRepository;
+
+    @MockBean
+    private CategoryCatalog categoryCatalog;
+
+    @MockBean
+    private Validator validator;
+
+    @MockBean
+    private ProductBatchProperties productBatchProperties;
+
+    @MockBean
+    private StockReservationCoalescer stockReservationCoalescer;
+
+    @MockBean
+    private CategoryStatsRecorder categoryStatsRecorder;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    // 缓存在同一个spring上下文的测试之间共享, 每个测试后清空
+    @AfterEach
+    void clearCaches() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void shouldReadProductFromCacheAfterFirstLookup() {
+        // mock
+        Product product = Product.builder().id(UUID.randomUUID().toString()).name("name").build();
+        // given
+        BDDMockito.given(productRepository.findById(product.getId())).willReturn(Optional.of(product));
+        // when
+        productService.findById(product.getId());
+        Product cachedProduct = productService.findById(product.getId());
+        // then or assertions
+        Assertions.assertThat(cachedProduct).usingRecursiveComparison().isEqualTo(product);
+        Mockito.verify(productRepository, Mockito.times(1)).findById(product.getId());
+    }
+
+    @Test
+    void shouldCacheMissingProductLookups() {
+        // given
+        BDDMockito.given(productRepository.findById(ArgumentMatchers.anyString())).willReturn(Optional.empty());
+        // when
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThat(productService.findById("missing-id")).isNull();
+        }
+        // then or assertions
+        Mockito.verify(productRepository, Mockito.times(1)).findById("missing-id");
+    }
+
+    @Test
+    void shouldReplaceCachedEntryOnSave() {
+        // mock
+        ProductRequest productRequest = new ProductRequest("name", "description", BigDecimal.TEN, "category", 5);
+        // given: 保存时repository原样返回传入的商品
+        BDDMockito.given(categoryCatalog.exists("category")).willReturn(true);
+        BDDMockito.given(productRepository.save(ArgumentMatchers.any(Product.class))).willAnswer(invocation -> invocation.getArgument(0));
+        // when
+        Product savedProduct = productService.save(productRequest);
+        Product cachedProduct = productService.findById(savedProduct.getId());
+        // then or assertions
+        Assertions.assertThat(cachedProduct).isSameAs(savedProduct);
+        Mockito.verify(productRepository, Mockito.never()).findById(ArgumentMatchers.anyString());
+    }
+
+    @Test
+    void shouldReadCategoryFromCacheAfterSave() {
+        // given
+        BDDMockito.given(categoryRepository.save(ArgumentMatchers.any(Category.class))).willAnswer(invocation -> invocation.getArgument(0));
+        // when
+        Category savedCategory = categoryService.save(new CategoryRequest("name", "description"));
+        Category cachedCategory = categoryService.findById(savedCategory.getId());
+        // then or assertions
+        Assertions.assertThat(cachedCategory).isSameAs(savedCategory);
+        Mockito.verify(categoryRepository, Mockito.never()).findById(ArgumentMatchers.anyString());
+    }
+
+    // 应用中的配置类都由@ConfigurationPropertiesScan注册, 这里只启动了部分bean, 缓存配置需要单独注册
+    @TestConfiguration
+    @EnableConfigurationProperties(AppCacheProperties.class)
+    static class CachePropertiesConfig {
+    }
+}
@@ -0,0 +1,187 @@
+package com.moh.yehia.testing.service;
+
+import com.moh.yehia.testing.config.ProductReservationProperties;
+import com.moh.yehia.testing.exception.InsufficientStockException;
+import com.moh.yehia.testing.exception.InvalidRequestException;
+import com.moh.yehia.testing.model.Product;
+import com.moh.yehia.testing.model.ReservationResult;
+import com.moh.yehia.testing.repository.ProductRepository;
+import com.moh.yehia.testing.service.impl.CategoryStatsRecorder;
+import com.moh.yehia.testing.service.impl.StockReservationCoalescer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+class StockReservationCoalescerTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CategoryStatsRecorder categoryStatsRecorder;
+
+    private StockReservationCoalescer coalescer;
+
+    @AfterEach
+    void shutdown() {
+        if (coalescer != null) {
+            coalescer.destroy();
+        }
+    }
+
+    @Test
+    void shouldReserveDirectlyWhenCoalescingDisabled() {
+        coalescer = new StockReservationCoalescer(productRepository, new ProductReservationProperties(), categoryStatsRecorder);
+        // given
+        BDDMockito.given(productRepository.reserve("p1", 2)).willReturn(Product.builder().id("p1").stock(8).build());
+        // when & then
+        Assertions.assertThat(coalescer.reserve("p1", 2)).isEqualTo(new ReservationResult("p1", 2, 8));
+    }
+
+    @Test
+    void shouldDistinguishInsufficientStockFromUnknownProduct() {
+        coalescer = new StockReservationCoalescer(productRepository, new ProductReservationProperties(), categoryStatsRecorder);
+        // given
+        BDDMockito.given(productRepository.reserve(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt())).willReturn(null);
+        BDDMockito.given(productRepository.existsById("p1")).willReturn(true);
+        BDDMockito.given(productRepository.existsById("p2")).willReturn(false);
+        // when & then
+        Assertions.assertThatThrownBy(() -> coalescer.reserve("p1", 2)).isInstanceOf(InsufficientStockException.class);
+        Assertions.assertThatThrownBy(() -> coalescer.reserve("p2", 2)).isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void shouldMergeConcurrentReservationsIntoOneUpdate() throws Exception {
+        coalescer = new StockReservationCoalescer(productRepository, coalescingProperties(), categoryStatsRecorder);
+        // 第一次更新阻塞住, 让其余的请求都在队列中等待, 之后应该合并成一次扣减4件
+        CountDownLatch firstUpdateStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstUpdate = new CountDownLatch(1);
+        BDDMockito.given(productRepository.reserve("p1", 1)).willAnswer(invocation -> {
+            firstUpdateStarted.countDown();
+            releaseFirstUpdate.await(5, TimeUnit.SECONDS);
+            return Product.builder().id("p1").stock(9).build();
+        });
+        BDDMockito.given(productRepository.reserve("p1", 4)).willReturn(Product.builder().id("p1").stock(5).build());
+        ExecutorService clients = Executors.newFixedThreadPool(5);
+        try {
+            Future<ReservationResult> first = clients.submit(() -> coalescer.reserve("p1", 1));
+            Assertions.assertThat(firstUpdateStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            List<Future<ReservationResult>> queued = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queued.add(clients.submit(() -> coalescer.reserve("p1", 1)));
+            }
+            // 等4个请求都进入队列后再放行第一次更新
+            Thread.sleep(200);
+            releaseFirstUpdate.countDown();
+
+            Assertions.assertThat(first.get(5, TimeUnit.SECONDS).getRemainingStock()).isEqualTo(9);
+            List<Integer> remaining = new ArrayList<>();
+            for (Future<ReservationResult> future : queued) {
+                remaining.add(future.get(5, TimeUnit.SECONDS).getRemainingStock());
+            }
+            // 剩余库存与按到达顺序逐个扣减的结果一致
+            Assertions.assertThat(remaining).containsExactlyInAnyOrder(8, 7, 6, 5);
+            BDDMockito.verify(productRepository, Mockito.times(1)).reserve("p1", 4);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldFallBackToSingleReservationsWhenBatchDoesNotFit() throws Exception {
+        coalescer = new StockReservationCoalescer(productRepository, coalescingProperties(), categoryStatsRecorder);
+        CountDownLatch firstUpdateStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstUpdate = new CountDownLatch(1);
+        BDDMockito.given(productRepository.reserve("p1", 1)).willAnswer(invocation -> {
+            firstUpdateStarted.countDown();
+            releaseFirstUpdate.await(5, TimeUnit.SECONDS);
+            return Product.builder().id("p1").stock(2).build();
+        });
+        // 剩余2件: 合并后的3件不够, 逐个预占时前两个2件请求只有一个能成功
+        BDDMockito.given(productRepository.reserve("p1", 4)).willReturn(null);
+        BDDMockito.given(productRepository.reserve("p1", 2)).willReturn(Product.builder().id("p1").stock(0).build(), (Product) null);
+        BDDMockito.given(productRepository.existsById("p1")).willReturn(true);
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            Future<ReservationResult> first = clients.submit(() -> coalescer.reserve("p1", 1));
+            Assertions.assertThat(firstUpdateStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ReservationResult> second = clients.submit(() -> coalescer.reserve("p1", 2));
+            Future<ReservationResult> third = clients.submit(() -> coalescer.reserve("p1", 2));
+            Thread.sleep(200);
+            releaseFirstUpdate.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            int succeeded = 0;
+            int rejected = 0;
+            for (Future<ReservationResult> future : List.of(second, third)) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    succeeded++;
+                } catch (ExecutionException e) {
+                    Assertions.assertThat(e.getCause()).isInstanceOf(InsufficientStockException.class);
+                    rejected++;
+                }
+            }
+            Assertions.assertThat(succeeded).isEqualTo(1);
+            Assertions.assertThat(rejected).isEqualTo(1);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotMergeReservationsWhoseTotalOverflowsInt() throws Exception {
+        coalescer = new StockReservationCoalescer(productRepository, coalescingProperties(), categoryStatsRecorder);
+        CountDownLatch firstUpdateStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstUpdate = new CountDownLatch(1);
+        BDDMockito.given(productRepository.reserve("p1", 1)).willAnswer(invocation -> {
+            firstUpdateStarted.countDown();
+            releaseFirstUpdate.await(5, TimeUnit.SECONDS);
+            return Product.builder().id("p1").stock(5).build();
+        });
+        int large = Integer.MAX_VALUE / 2 + 1;
+        BDDMockito.given(productRepository.reserve("p1", large)).willReturn(null);
+        BDDMockito.given(productRepository.existsById("p1")).willReturn(true);
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            Future<ReservationResult> first = clients.submit(() -> coalescer.reserve("p1", 1));
+            Assertions.assertThat(firstUpdateStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ReservationResult> second = clients.submit(() -> coalescer.reserve("p1", large));
+            Future<ReservationResult> third = clients.submit(() -> coalescer.reserve("p1", large));
+            Thread.sleep(200);
+            releaseFirstUpdate.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            for (Future<ReservationResult> future : List.of(second, third)) {
+                Assertions.assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                        .hasCauseInstanceOf(InsufficientStockException.class);
+            }
+            // 两个请求分别预占, 从来没有用溢出后的(负)数量更新过库存
+            BDDMockito.verify(productRepository, Mockito.times(2)).reserve("p1", large);
+            BDDMockito.verify(productRepository, Mockito.never()).reserve(ArgumentMatchers.eq("p1"), ArgumentMatchers.intThat(quantity -> quantity < 1));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static ProductReservationProperties coalescingProperties() {
+        ProductReservationProperties properties = new ProductReservationProperties();
+        properties.setCoalescingEnabled(true);
+        return properties;
+    }
+}
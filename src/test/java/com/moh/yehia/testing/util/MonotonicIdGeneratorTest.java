@@ -0,0 +1,75 @@
+package com.moh.yehia.testing.util;
+
+import org.assertj.core.api.Assertions;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MonotonicIdGeneratorTest {
+
+    @Test
+    void shouldGenerateObjectIdCompatibleHexWithCurrentTimestamp() {
+        // given
+        long millis = 1_700_000_000_123L;
+        MonotonicIdGenerator generator = new MonotonicIdGenerator(() -> millis, new Random(1));
+        // when
+        String id = generator.nextId();
+        // then
+        Assertions.assertThat(id).hasSize(24).matches("[0-9a-f]{24}");
+        Assertions.assertThat(ObjectId.isValid(id)).isTrue();
+        Assertions.assertThat(new ObjectId(id).getTimestamp()).isEqualTo((int) (millis / 1000));
+    }
+
+    @Test
+    void shouldStayIncreasingWhenClockStandsStillOrGoesBackwards() {
+        // given: 时钟先停住, 再往回拨
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        MonotonicIdGenerator generator = new MonotonicIdGenerator(clock::get, new Random(1));
+        List<String> ids = new ArrayList<>();
+        // when
+        for (int i = 0; i < 1000; i++) {
+            ids.add(generator.nextId());
+        }
+        clock.addAndGet(-60_000);
+        for (int i = 0; i < 1000; i++) {
+            ids.add(generator.nextId());
+        }
+        // then
+        Assertions.assertThat(ids).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldGenerateUniqueIdsConcurrently() throws Exception {
+        // given
+        MonotonicIdGenerator generator = new MonotonicIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            // when
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        ids.add(generator.nextId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // then
+        Assertions.assertThat(ids).hasSize(80_000);
+    }
+}